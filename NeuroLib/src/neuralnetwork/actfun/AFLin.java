@@ -35,4 +35,52 @@ public class AFLin extends AFunction{
 
 		return Beta;
 	}
+
+	@Override
+	public boolean hasOutputDerivative() {
+		return true;
+	}
+
+	@Override
+	public double deriFromOut(double out) {
+
+		return Beta;
+	}
+
+	@Override
+	public void deriFromOut(double[] in, double[] out, int off, int len) {
+		deri(in, out, off, len);
+	}
+
+	@Override
+	public void calc(double[] in, double[] out, int off, int len) {
+		double B = Beta;
+		for (int i = off; i < off + len; i++) {
+			out[i] = B * in[i];
+		}
+	}
+
+	@Override
+	public void deri(double[] in, double[] out, int off, int len) {
+		double B = Beta;
+		for (int i = off; i < off + len; i++) {
+			out[i] = B;
+		}
+	}
+
+	@Override
+	public void calc(float[] in, float[] out, int off, int len) {
+		float B = (float) Beta;
+		for (int i = off; i < off + len; i++) {
+			out[i] = B * in[i];
+		}
+	}
+
+	@Override
+	public void deriFromOut(float[] in, float[] out, int off, int len) {
+		float B = (float) Beta;
+		for (int i = off; i < off + len; i++) {
+			out[i] = B;
+		}
+	}
 }
@@ -1,9 +1,35 @@
 package neuralnetwork.actfun;
 
+/**
+ * Sigmoid function 1 / (1 + exp(-Beta * x)).
+ *
+ * By default the function is calculated exactly. In fast mode (see
+ * setFastMode()) values are taken from a precomputed table with linear
+ * interpolation, which avoids Math.exp() and keeps the absolute error below
+ * the requested limit.
+ *
+ * deri() is calculated exactly (with Math.exp()) in exact mode and as
+ * Beta * s * (1 - s) from the interpolated value s in fast mode. Learning
+ * algorithms use deriFromOut() - the same formula applied to outputs of
+ * neurons, so the function is not calculated again. For large |x| it returns
+ * 0.0 when s is rounded to 1.0, while exact deri() is still positive.
+ */
 public class AFSigm extends AFunction {
 
+	/** the smallest error accepted by setFastMode() */
+	public static final double MIN_FAST_ERROR = 1e-9;
+
+	// maximum absolute value of the second derivative of 1 / (1 + exp(-t))
+	private static final double MAX_SECOND_DERI = 1.0 / (6.0 * Math.sqrt(3.0));
+
 	private double Beta;
 
+	// table of 1 / (1 + exp(-t)) for t in [-range, range] (fast mode only)
+	private double[] table;
+	private double range;
+	private double invStep;
+	private double fastError;
+
 	public AFSigm() {
 		Beta = 0.5;
 	}
@@ -14,6 +40,11 @@ public class AFSigm extends AFunction {
 
 	public AFSigm(AFSigm src) {
 		Beta = src.Beta;
+		// the table is never modified, so it can be shared
+		table = src.table;
+		range = src.range;
+		invStep = src.invStep;
+		fastError = src.fastError;
 	}
 
 	public double getBeta() {
@@ -24,22 +55,161 @@ public class AFSigm extends AFunction {
 		Beta = beta;
 	}
 
+	/**
+	 * Switches to fast mode - values are interpolated from a table instead of
+	 * calling Math.exp(). The absolute error of calc() does not exceed maxError.
+	 * The error of deri() does not exceed Beta * maxError.
+	 *
+	 * @param maxError maximum absolute error (not less than MIN_FAST_ERROR)
+	 */
+	public void setFastMode(double maxError) {
+		if (maxError < MIN_FAST_ERROR)
+			maxError = MIN_FAST_ERROR;
+
+		// half of the error is allowed for clamping arguments to the range
+		// (1 - s(range) = s(-range) < exp(-range)) and half for interpolation
+		// (the error of linear interpolation is below step^2 / 8 * max|s''|)
+		double half = maxError / 2.0;
+		double r = Math.log(1.0 / half);
+		double step = Math.sqrt(8.0 * half / MAX_SECOND_DERI);
+		int size = (int) Math.ceil(2.0 * r / step) + 1;
+
+		double[] t = new double[size];
+		step = 2.0 * r / (size - 1);
+		for (int i = 0; i < size; i++) {
+			t[i] = 1.0 / (1.0 + Math.exp(-(-r + i * step)));
+		}
+
+		table = t;
+		range = r;
+		invStep = 1.0 / step;
+		fastError = maxError;
+	}
+
+	/**
+	 * Switches back to exact calculation (default).
+	 */
+	public void setExactMode() {
+		table = null;
+		fastError = 0.0;
+	}
+
+	public boolean isFastMode() {
+		return table != null;
+	}
+
+	/**
+	 * @return maximum absolute error of fast mode, 0.0 in exact mode
+	 */
+	public double getFastModeError() {
+		return fastError;
+	}
+
 	@Override
 	public double calc(double x) {
 
+		if (table != null)
+			return _lookup(Beta * x);
+
 		return (1.0 / (1.0 + Math.exp(-Beta * x)));
 	}
 
 	@Override
 	public double deri(double x) {
 
+		if (table != null)
+			return deri_fast(_lookup(Beta * x));
+
 		double eBx;
 		eBx = Math.exp(-Beta * x);
 		return ((Beta * eBx) / ((1.0 + eBx) * (1.0 + eBx)));
 	}
 
+	@Override
+	public boolean hasOutputDerivative() {
+		return true;
+	}
+
+	@Override
+	public double deriFromOut(double out) {
+
+		return deri_fast(out);
+	}
+
+	@Override
+	public void calc(double[] in, double[] out, int off, int len) {
+		double B = Beta;
+		if (table != null) {
+			for (int i = off; i < off + len; i++) {
+				out[i] = _lookup(B * in[i]);
+			}
+			return;
+		}
+		for (int i = off; i < off + len; i++) {
+			out[i] = (1.0 / (1.0 + Math.exp(-B * in[i])));
+		}
+	}
+
+	@Override
+	public void deri(double[] in, double[] out, int off, int len) {
+		if (table != null) {
+			calc(in, out, off, len);
+			deriFromOut(out, out, off, len);
+			return;
+		}
+		for (int i = off; i < off + len; i++) {
+			out[i] = deri(in[i]);
+		}
+	}
+
+	@Override
+	public void deriFromOut(double[] in, double[] out, int off, int len) {
+		double B = Beta;
+		for (int i = off; i < off + len; i++) {
+			out[i] = (B * in[i] * (1.0 - in[i]));
+		}
+	}
+
+	@Override
+	public void calc(float[] in, float[] out, int off, int len) {
+		double B = Beta;
+		if (table != null) {
+			for (int i = off; i < off + len; i++) {
+				out[i] = (float) _lookup(B * in[i]);
+			}
+			return;
+		}
+		for (int i = off; i < off + len; i++) {
+			out[i] = (float) (1.0 / (1.0 + Math.exp(-B * in[i])));
+		}
+	}
+
+	@Override
+	public void deriFromOut(float[] in, float[] out, int off, int len) {
+		float B = (float) Beta;
+		for (int i = off; i < off + len; i++) {
+			out[i] = (B * in[i] * (1.0f - in[i]));
+		}
+	}
+
 	public double deri_fast(double out) {
 		return (Beta * out * (1.0 - out));
 	}
 
+	/// Returns 1 / (1 + exp(-t)) interpolated from the table.
+	/// Arguments outside of the table range are clamped.
+	private double _lookup(double t) {
+		double pos = (t + range) * invStep;
+		int last = table.length - 1;
+
+		if (pos <= 0.0)
+			return table[0];
+		if (pos >= last)
+			return table[last];
+
+		int i = (int) pos;
+		double f = pos - i;
+		return table[i] + (table[i + 1] - table[i]) * f;
+	}
+
 }
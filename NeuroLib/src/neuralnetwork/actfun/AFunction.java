@@ -6,4 +6,109 @@ public abstract class AFunction {
 
 	public abstract double deri(double x);
 
+	/**
+	 * Tells whether the derivative can be calculated from the value of the
+	 * function (see deriFromOut()). Learning algorithms use this form when it is
+	 * available, because outputs of neurons are already known.
+	 * 
+	 * @return true if deriFromOut() is supported
+	 */
+	public boolean hasOutputDerivative() {
+		return false;
+	}
+
+	/**
+	 * Calculates the derivative using the value of the function. For every x
+	 * deriFromOut(calc(x)) returns the same value as deri(x) (up to rounding of
+	 * the function value). Supported only if hasOutputDerivative() returns true.
+	 * 
+	 * @param out value of the function
+	 * @return value of the derivative
+	 * @throws UnsupportedOperationException if hasOutputDerivative() is false
+	 */
+	public double deriFromOut(double out) {
+		throw new UnsupportedOperationException("Derivative cannot be calculated from the output.");
+	}
+
+	/**
+	 * Calculates values of the function for len elements of the input array
+	 * starting from index off. Results are stored under the same indexes of the
+	 * output array (it can be the same array as the input).
+	 * 
+	 * @param in  arguments
+	 * @param out results
+	 * @param off index of the first element
+	 * @param len number of elements
+	 */
+	public void calc(double[] in, double[] out, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			out[i] = calc(in[i]);
+		}
+	}
+
+	/**
+	 * Calculates values of the derivative for len elements of the input array
+	 * starting from index off. Results are stored under the same indexes of the
+	 * output array (it can be the same array as the input).
+	 * 
+	 * @param in  arguments
+	 * @param out results
+	 * @param off index of the first element
+	 * @param len number of elements
+	 */
+	public void deri(double[] in, double[] out, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			out[i] = deri(in[i]);
+		}
+	}
+
+	/**
+	 * Calculates derivatives for len values of the function starting from index
+	 * off (see deriFromOut(double)).
+	 * 
+	 * @param in  values of the function
+	 * @param out results
+	 * @param off index of the first element
+	 * @param len number of elements
+	 * @throws UnsupportedOperationException if hasOutputDerivative() is false
+	 */
+	public void deriFromOut(double[] in, double[] out, int off, int len) {
+		if (!hasOutputDerivative())
+			throw new UnsupportedOperationException("Derivative cannot be calculated from the output.");
+		for (int i = off; i < off + len; i++) {
+			out[i] = deriFromOut(in[i]);
+		}
+	}
+
+	/**
+	 * Single precision version of calc(double[], double[], int, int).
+	 */
+	public void calc(float[] in, float[] out, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			out[i] = (float) calc(in[i]);
+		}
+	}
+
+	/**
+	 * Single precision version of deri(double[], double[], int, int).
+	 */
+	public void deri(float[] in, float[] out, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			out[i] = (float) deri(in[i]);
+		}
+	}
+
+	/**
+	 * Single precision version of deriFromOut(double[], double[], int, int).
+	 *
+	 * @throws UnsupportedOperationException if hasOutputDerivative() is false
+	 */
+	public void deriFromOut(float[] in, float[] out, int off, int len) {
+		if (!hasOutputDerivative())
+			throw new UnsupportedOperationException("Derivative cannot be calculated from the output.");
+		for (int i = off; i < off + len; i++) {
+			out[i] = (float) deriFromOut(in[i]);
+		}
+	}
+
 }
@@ -580,6 +580,41 @@ public class DataPackage {
 		return true;
 	}
 
+	/**
+	 * Returns values of all vectors in form of new arrays of doubles (one array
+	 * per row).
+	 * 
+	 * @return content of DataPackage in arrays of doubles
+	 */
+	public double[][] toArrayOfDoubles() {
+		double[][] destination = new double[data.size()][];
+
+		int i = 0;
+		for (DataVector v : data) {
+			destination[i++] = v.toArrayOfDoubles();
+		}
+
+		return destination;
+	}
+
+	/**
+	 * Returns values of all vectors in form of new arrays of floats (one array
+	 * per row). It is a temporary copy - the package itself still stores doubles.
+	 * Use FloatDataPackage to keep a data set in single precision.
+	 * 
+	 * @return content of DataPackage in arrays of floats
+	 */
+	public float[][] toArrayOfFloats() {
+		float[][] destination = new float[data.size()][];
+
+		int i = 0;
+		for (DataVector v : data) {
+			destination[i++] = v.toArrayOfFloats();
+		}
+
+		return destination;
+	}
+
 	public double getAverage() {
 		double sum = 0.0;
 
@@ -200,6 +200,23 @@ public class DataVector {
 		return destination;
 	}
 
+	/**
+	 * Returns DataVector values in form of a new array of floats (single
+	 * precision)
+	 * 
+	 * @return content of DataVector in array of floats
+	 */
+	public float[] toArrayOfFloats() {
+
+		float[] destination = new float[data.size()];
+
+		for (int i = 0; i < data.size(); i++) {
+			destination[i] = data.get(i).floatValue();
+		}
+
+		return destination;
+	}
+
 	/**
 	 * Returns an arithmetic average of all values
 	 * 
@@ -0,0 +1,155 @@
+package neuralnetwork.data;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data set stored in single precision - one array of floats per row. A row
+ * takes 4 bytes per value, while DataPackage keeps boxed Double objects (more
+ * than 16 bytes per value). It is used directly by BackPAlgMFloat. Rows can be
+ * loaded from a text file (the same format as in DataPackage) or converted
+ * from a DataPackage.
+ */
+public class FloatDataPackage {
+	private List<float[]> data = new ArrayList<float[]>();
+
+	private int min_size = 0;
+	private int max_size = 0;
+
+	String sep_regexp = "[ ,;\\t]";
+	char decimal_separator = '.';
+
+	private boolean ignore_parse_errors = false;
+
+	public FloatDataPackage() {
+	}
+
+	/**
+	 * Creates a single precision copy of the source package.
+	 *
+	 * @param src
+	 */
+	public FloatDataPackage(DataPackage src) {
+		for (DataVector row : src.getList()) {
+			add(row.toArrayOfFloats());
+		}
+	}
+
+	/**
+	 * @see DataPackage#setFieldSeparator(String)
+	 */
+	public void setFieldSeparator(String field_separator) {
+		this.sep_regexp = field_separator;
+	}
+
+	/**
+	 * @see DataPackage#setDecimalSeparator(char)
+	 */
+	public void setDecimalSeparator(char decimal_separator) {
+		this.decimal_separator = decimal_separator;
+	}
+
+	public boolean isIgnoreParseErrors() {
+		return ignore_parse_errors;
+	}
+
+	public void setIgnoreParseErrors(boolean ignoreParseErrors) {
+		this.ignore_parse_errors = ignoreParseErrors;
+	}
+
+	/**
+	 * @return minimum row size
+	 */
+	public int getMinRowSize() {
+		return min_size;
+	}
+
+	/**
+	 * @return maximum row size
+	 */
+	public int getMaxRowSize() {
+		return max_size;
+	}
+
+	/**
+	 * @return number of stored rows
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * Retrieves the row by given index (the stored array, not a copy).
+	 *
+	 * @param index index of a row
+	 * @return row values
+	 */
+	public float[] get(int index) {
+		return data.get(index);
+	}
+
+	/**
+	 * Adds a row (the array is stored, not copied) and updates minimum and
+	 * maximum row size.
+	 *
+	 * @param row
+	 */
+	public void add(float[] row) {
+		data.add(row);
+		if (row.length < min_size || data.size() == 1)
+			min_size = row.length;
+		if (row.length > max_size)
+			max_size = row.length;
+	}
+
+	public void clear() {
+		data.clear();
+		min_size = 0;
+		max_size = 0;
+	}
+
+	/**
+	 * Loads all data from text file. Every row is converted to floats right after
+	 * parsing, so the whole set is never stored in double precision.
+	 *
+	 * @see DataPackage#loadTextFile(String)
+	 */
+	public boolean loadTextFile(String file) {
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)))) {
+			String strLine;
+			while ((strLine = br.readLine()) != null) {
+				DataVector vector = new DataVector();
+				vector.parse(strLine, sep_regexp, decimal_separator, 0, null, ignore_parse_errors);
+				if (!vector.data.isEmpty()) {
+					add(vector.toArrayOfFloats());
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("error during accessing/reading a file: " + file);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Converts the content to a new DataPackage (double precision).
+	 *
+	 * @return new data package
+	 */
+	public DataPackage toDataPackage() {
+		DataPackage result = new DataPackage();
+		for (float[] row : data) {
+			DataVector vector = new DataVector(row.length);
+			for (float v : row) {
+				vector.data.add((double) v);
+			}
+			result.add(vector);
+		}
+		return result;
+	}
+
+}
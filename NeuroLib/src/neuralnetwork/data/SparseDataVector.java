@@ -0,0 +1,194 @@
+package neuralnetwork.data;
+
+import java.util.Arrays;
+
+/**
+ * Vector of values in which most values are zero. Only non-zero values are
+ * stored - as pairs of an index and a value, sorted by indexes.
+ */
+public class SparseDataVector {
+
+	// number of all values (including zeros)
+	int size;
+	// number of stored values
+	int count;
+	int[] index;
+	double[] value;
+
+	/**
+	 * Creates a vector of zeros.
+	 *
+	 * @param size number of all values
+	 */
+	public SparseDataVector(int size) {
+		this.size = size;
+		index = new int[4];
+		value = new double[4];
+	}
+
+	/**
+	 * Creates a vector from index/value pairs (the arrays are copied).
+	 *
+	 * @param size  number of all values
+	 * @param index indexes of non-zero values (in ascending order)
+	 * @param value non-zero values
+	 * @param count number of pairs
+	 * @throws IllegalArgumentException if indexes are not strictly increasing or
+	 *                                  not in range 0 .. size - 1
+	 */
+	public SparseDataVector(int size, int[] index, double[] value, int count) {
+		if (count < 0 || count > index.length || count > value.length)
+			throw new IllegalArgumentException("Invalid number of index/value pairs: " + count);
+		for (int k = 0; k < count; k++) {
+			if (index[k] < 0 || index[k] >= size)
+				throw new IllegalArgumentException("Index out of range 0.." + (size - 1) + ": " + index[k]);
+			if (k > 0 && index[k] <= index[k - 1])
+				throw new IllegalArgumentException("Indexes are not strictly increasing at position " + k);
+		}
+
+		this.size = size;
+		this.count = count;
+		this.index = Arrays.copyOf(index, Math.max(count, 4));
+		this.value = Arrays.copyOf(value, Math.max(count, 4));
+	}
+
+	/**
+	 * Creates a vector containing non-zero values of the array.
+	 *
+	 * @param buf values
+	 */
+	public SparseDataVector(double[] buf) {
+		this(buf.length);
+		for (int i = 0; i < buf.length; i++) {
+			if (buf[i] != 0.0)
+				_append(i, buf[i]);
+		}
+	}
+
+	/**
+	 * Creates a vector containing non-zero values of the DataVector.
+	 *
+	 * @param src source vector
+	 */
+	public SparseDataVector(DataVector src) {
+		this(src.size());
+		for (int i = 0; i < src.size(); i++) {
+			double v = src.get(i);
+			if (v != 0.0)
+				_append(i, v);
+		}
+	}
+
+	public SparseDataVector(SparseDataVector src) {
+		this(src.size, src.index, src.value, src.count);
+	}
+
+	/**
+	 * @return number of all values (including zeros)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of stored (non-zero) values
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return indexes of stored values (only the first getCount() are valid)
+	 */
+	public int[] getIndexes() {
+		return index;
+	}
+
+	/**
+	 * @return stored values (only the first getCount() are valid)
+	 */
+	public double[] getValues() {
+		return value;
+	}
+
+	public double get(int i) {
+		int pos = Arrays.binarySearch(index, 0, count, i);
+		return (pos >= 0) ? value[pos] : 0.0;
+	}
+
+	/**
+	 * Sets the value with the given index. Setting zero removes the value.
+	 *
+	 * @param i index (0 .. size() - 1)
+	 * @param v new value
+	 */
+	public void set(int i, double v) {
+		if (i < 0 || i >= size)
+			return;
+
+		int pos = Arrays.binarySearch(index, 0, count, i);
+		if (pos >= 0) {
+			if (v != 0.0) {
+				value[pos] = v;
+			} else {
+				System.arraycopy(index, pos + 1, index, pos, count - pos - 1);
+				System.arraycopy(value, pos + 1, value, pos, count - pos - 1);
+				count--;
+			}
+		} else if (v != 0.0) {
+			pos = -pos - 1;
+			_ensureCapacity(count + 1);
+			System.arraycopy(index, pos, index, pos + 1, count - pos);
+			System.arraycopy(value, pos, value, pos + 1, count - pos);
+			index[pos] = i;
+			value[pos] = v;
+			count++;
+		}
+	}
+
+	/**
+	 * Returns all values (including zeros) in form of a new array of doubles
+	 *
+	 * @return content of the vector in array of doubles
+	 */
+	public double[] toArrayOfDoubles() {
+		double[] destination = new double[size];
+		for (int k = 0; k < count; k++) {
+			destination[index[k]] = value[k];
+		}
+		return destination;
+	}
+
+	/**
+	 * @return a new dense DataVector with all values
+	 */
+	public DataVector toDataVector() {
+		return new DataVector(toArrayOfDoubles());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		output.append(size).append(":");
+		for (int k = 0; k < count; k++) {
+			output.append(" ").append(index[k]).append("=").append(value[k]);
+		}
+		return output.toString();
+	}
+
+	private void _append(int i, double v) {
+		_ensureCapacity(count + 1);
+		index[count] = i;
+		value[count] = v;
+		count++;
+	}
+
+	private void _ensureCapacity(int capacity) {
+		if (capacity > index.length) {
+			int length = Math.max(capacity, 2 * index.length);
+			index = Arrays.copyOf(index, length);
+			value = Arrays.copyOf(value, length);
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package neuralnetwork.learningalg;
+
+/**
+ * Back-propagation with Adagrad updates: the change of a weight is divided by
+ * the root of the sum of squares of all its previous changes (s), so weights
+ * changed often learn slower. The update of a weight is eta * change /
+ * (sqrt(s) + epsilon).
+ */
+public class BackPAlgAdagrad extends BackPAlgAdaptive {
+
+	public static final double DEFAULT_ADAGRAD_ETA = 0.01;
+
+	// sums of squares of weight changes
+	protected double[][] s;
+
+	public BackPAlgAdagrad() {
+		super(DEFAULT_ADAGRAD_ETA);
+	}
+
+	public BackPAlgAdagrad(BackPAlgAdagrad src) {
+		super(src);
+	}
+
+	@Override
+	protected void _resetState() {
+		s = GradientWorker.newGradient(netFF);
+	}
+
+	@Override
+	protected void _update(int l, double[] g, double scale) {
+		double[] sl = s[l];
+		double[] weights = netFF.Lrs[l].weights;
+		double change;
+
+		for (int w = 0; w < g.length; w++) {
+			change = g[w] * scale;
+			sl[w] += change * change;
+			weights[w] += eta * change / (Math.sqrt(sl[w]) + epsilon);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package neuralnetwork.learningalg;
+
+/**
+ * Back-propagation with Adam updates: moving averages of weight changes (m)
+ * and of their squares (v) with bias correction. The update of a weight is
+ * eta * m' / (sqrt(v') + epsilon).
+ */
+public class BackPAlgAdam extends BackPAlgAdaptive {
+
+	public static final double DEFAULT_ADAM_ETA = 0.001;
+	public static final double DEFAULT_BETA1 = 0.9;
+	public static final double DEFAULT_BETA2 = 0.999;
+
+	protected double beta1;
+	protected double beta2;
+
+	// first and second moments of weight changes
+	protected double[][] m;
+	protected double[][] v;
+	// number of updates
+	protected long t;
+
+	// bias corrections of the current update
+	private double corr1;
+	private double corr2;
+
+	public BackPAlgAdam() {
+		super(DEFAULT_ADAM_ETA);
+		beta1 = DEFAULT_BETA1;
+		beta2 = DEFAULT_BETA2;
+	}
+
+	public BackPAlgAdam(BackPAlgAdam src) {
+		super(src);
+		beta1 = src.beta1;
+		beta2 = src.beta2;
+	}
+
+	/**
+	 * @param beta1 decay rate of the first moment (0.0 - 1.0)
+	 * @param beta2 decay rate of the second moment (0.0 - 1.0)
+	 */
+	public void setBetas(double beta1, double beta2) {
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+	}
+
+	@Override
+	protected void _resetState() {
+		m = GradientWorker.newGradient(netFF);
+		v = GradientWorker.newGradient(netFF);
+		t = 0;
+	}
+
+	@Override
+	protected void _beginUpdate() {
+		t++;
+		corr1 = 1.0 / (1.0 - Math.pow(beta1, t));
+		corr2 = 1.0 / (1.0 - Math.pow(beta2, t));
+	}
+
+	@Override
+	protected void _update(int l, double[] g, double scale) {
+		double[] ml = m[l];
+		double[] vl = v[l];
+		double[] weights = netFF.Lrs[l].weights;
+		double change;
+
+		for (int w = 0; w < g.length; w++) {
+			change = g[w] * scale;
+			ml[w] = beta1 * ml[w] + (1.0 - beta1) * change;
+			vl[w] = beta2 * vl[w] + (1.0 - beta2) * change * change;
+			weights[w] += eta * (ml[w] * corr1) / (Math.sqrt(vl[w] * corr2) + epsilon);
+		}
+	}
+
+}
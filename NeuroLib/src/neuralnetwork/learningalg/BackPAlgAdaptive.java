@@ -0,0 +1,202 @@
+package neuralnetwork.learningalg;
+
+import java.util.Arrays;
+
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Base class of back-propagation with adaptive learning rates of weights
+ * (BackPAlgAdam, BackPAlgRMSProp, BackPAlgAdagrad). Weight changes are
+ * calculated as in BackPAlgBare and averaged over a mini-batch (1 sample by
+ * default); subclasses turn the averaged change into the update of each
+ * weight using their own state kept in flat arrays (the same layout as
+ * Lrs[l].weights).
+ *
+ * The error returned by learn() is calculated during the epoch (for weights
+ * before the update of a sample or batch).
+ */
+public abstract class BackPAlgAdaptive extends SupervisedLearnAlg {
+
+	public static final double DEFAULT_EPSILON = 1e-8;
+
+	protected double eta;
+	protected double epsilon;
+	protected int batchSize;
+
+	private GradientWorker worker;
+	// sums of weight changes of the current mini-batch
+	protected double[][] grad;
+	protected int batchCount;
+
+	public BackPAlgAdaptive(double eta) {
+		super();
+		this.eta = eta;
+		epsilon = DEFAULT_EPSILON;
+		batchSize = 1;
+	}
+
+	public BackPAlgAdaptive(BackPAlgAdaptive src) {
+		super(src);
+		eta = src.eta;
+		epsilon = src.epsilon;
+		batchSize = src.batchSize;
+	}
+
+	public void setEta(double e) {
+		eta = e;
+	}
+
+	/**
+	 * @param e small value added to denominators (avoids division by zero)
+	 */
+	public void setEpsilon(double e) {
+		epsilon = e;
+	}
+
+	/**
+	 * @param size number of samples per weight update
+	 */
+	public void setBatchSize(int size) {
+		if (size < 1)
+			return;
+		if (batchCount > 0 && netFF != null)
+			finishBatch();
+		batchSize = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public void setNeuralNetwork(NNetFF inetwork) {
+		super.setNeuralNetwork(inetwork);
+		worker = null;
+	}
+
+	/// Initializes learning process using step by step method - clears the state
+	/// of the algorithm. learn() and learnForMaxError() call it themselves.
+	public void initStepLearning() {
+		_prepareBuffers(true);
+	}
+
+	@Override
+	public void learnOneStep(double[] input, int inOffset, double[] output, int outOffset) throws NeuroException {
+		_check();
+		_prepareBuffers(false);
+		_learnOneStep(input, inOffset, output, outOffset);
+	}
+
+	/**
+	 * Applies weight changes accumulated in the current mini-batch (if any).
+	 */
+	public void finishBatch() {
+		if (batchCount == 0)
+			return;
+
+		double scale = 1.0 / batchCount;
+		_beginUpdate();
+		for (int l = 0; l < netFF.lCount; l++) {
+			_update(l, grad[l], scale);
+			Arrays.fill(grad[l], 0.0);
+		}
+		batchCount = 0;
+		netFF.markModified();
+	}
+
+	@Override
+	public double learn(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, false);
+	}
+
+	@Override
+	public double learnForMaxError(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, true);
+	}
+
+	/// Creates the state of the algorithm for the network (all values zero).
+	protected abstract void _resetState();
+
+	/// Called once before updates of all layers.
+	protected void _beginUpdate() {
+	}
+
+	/// Updates weights of the layer. The average change of weight w is
+	/// g[w] * scale.
+	protected abstract void _update(int l, double[] g, double scale);
+
+	private double _learnOneStep(double[] input, int inOffset, double[] output, int outOffset) {
+		worker.forward(input, inOffset);
+		double error = worker.backward(output, outOffset);
+		worker.accumulate(grad, input, inOffset);
+		batchCount++;
+		if (batchCount >= batchSize) {
+			finishBatch();
+		}
+		return error;
+	}
+
+	private double _learn(DataPackage input, DataPackage output, boolean maxErrorMode) throws NeuroException {
+		_check();
+		if (input.getMinRowSize() < netFF.inputSize) {
+			throw new NeuroException("DataVector size of input package is too small to match input size of the network.");
+		}
+		if (output.getMinRowSize() < netFF.Lrs[netFF.lCount - 1].nCount) {
+			throw new NeuroException("Size of output DataVector is too small to match output size of the network.");
+		}
+
+		long iter_count = 0;
+		int data_size = Math.min(input.size(), output.size());
+
+		initStepLearning();
+
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
+		last_error = max_error + 1.0;
+
+		while ((iter_count < max_iter) && (last_error > max_error)) {
+			last_error = 0.0;
+			for (int i = 0; i < data_size; i++) {
+				double error = _learnOneStep(in[i], 0, out[i], 0);
+				if (!maxErrorMode) {
+					last_error += error;
+				} else if (worker.maxError > last_error) {
+					last_error = worker.maxError;
+				}
+			}
+			finishBatch();
+			iter_count++;
+		}
+
+		last_iter = iter_count;
+		return last_error;
+	}
+
+	private void _check() throws NeuroException {
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned.");
+		}
+		if (netFF.lCount <= 0) {
+			throw new NeuroException("Neural Network has no layers.");
+		}
+	}
+
+	/// Creates buffers for the network if needed (or always if reset is true).
+	private void _prepareBuffers(boolean reset) {
+		boolean match = (worker != null && grad.length == netFF.lCount);
+		for (int l = 0; match && l < netFF.lCount; l++) {
+			match = (grad[l].length == netFF.Lrs[l].weights.length);
+		}
+		if (match && !reset)
+			return;
+
+		worker = new GradientWorker(netFF);
+		grad = GradientWorker.newGradient(netFF);
+		batchCount = 0;
+		_resetState();
+	}
+
+}
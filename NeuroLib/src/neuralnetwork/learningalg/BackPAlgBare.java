@@ -1,10 +1,14 @@
 package neuralnetwork.learningalg;
 
+import java.util.Arrays;
 import java.util.Vector;
 
+import neuralnetwork.actfun.AFunction;
 import neuralnetwork.data.DataPackage;
 import neuralnetwork.data.DataVector;
+import neuralnetwork.data.SparseDataVector;
 import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.Kernels;
 import neuralnetwork.network.Layer;
 import neuralnetwork.network.NNetFF;
 
@@ -12,12 +16,63 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 
 	protected double eta;
 
-	protected Layer buff[] = new Layer[2];
+	// errors of two neighbouring layers (used alternately)
+	protected double buff[][] = new double[2][0];
+
+	// derivatives of the activation function for one layer
+	protected double[] deriBuf = new double[0];
+
+	// buffers for input and output vectors given in a form of Vector<Double>
+	protected double[] inBuf = new double[0];
+	protected double[] outBuf = new double[0];
+
+	// weights which are allowed to change (null - all weights)
+	protected boolean[][] mask;
+
+	// number of samples per weight update (1 - online learning)
+	protected int batchSize = 1;
+	// number of samples accumulated in grad
+	protected int batchCount;
+	// sums of weight changes of the current mini-batch (the same layout as
+	// Lrs[l].weights, not multiplied by eta)
+	protected double[][] grad;
 
 	public void setEta(double e) {
 		eta = e;
 	}
 
+	/**
+	 * Restricts learning to weights selected by the mask: weight
+	 * Lrs[l].weights[i] is kept at zero if mask[l][i] is false. Used for
+	 * fine-tuning of pruned networks (see NNetPruner.getMask()).
+	 * 
+	 * @param mask mask of trained weights or null for all weights
+	 */
+	public void setPruningMask(boolean[][] mask) {
+		this.mask = mask;
+	}
+
+	/**
+	 * Sets the number of samples per weight update. With batch size greater
+	 * than 1, learnOneStep() only accumulates weight changes of a sample and the
+	 * average change is applied after every batchSize samples (learn() and
+	 * learnForMaxError() also apply a partial batch at the end of each epoch -
+	 * see finishBatch()).
+	 * 
+	 * @param size number of samples (1 - online learning)
+	 */
+	public void setBatchSize(int size) {
+		if (size < 1)
+			return;
+		if (batchCount > 0 && netFF != null)
+			finishBatch();
+		batchSize = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
 	public BackPAlgBare() {
 		super();
 		eta = DEFAULT_ETA;
@@ -28,23 +83,30 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 	public BackPAlgBare(BackPAlgBare src) {
 		super(src);
 		eta = src.eta;
+		mask = src.mask;
+		batchSize = src.batchSize;
 		_prepareBuffers();
 	}
 
 	protected double _calcError(Vector<Double> input, Vector<Double> output) {
+		_copyToBuffers(input, output);
+		return _calcError(inBuf, 0, outBuf, 0);
+	}
+
+	protected double _calcError(double[] input, int inOffset, double[] output, int outOffset) {
 
 		double tmp_err;
 		double output_error;
 
-		int layer_count = netFF.getLayerCount();
+		Layer last = netFF.Lrs[netFF.getLayerCount() - 1];
 
-		netFF.setInput(input);
+		netFF.setInput(input, inOffset);
 
 		output_error = 0.0;
 
-		for (int n = 0; n < netFF.Lrs[layer_count - 1].nCount; n++) {
+		for (int n = 0; n < last.nCount; n++) {
 
-			tmp_err = output.get(n) - netFF.Lrs[layer_count - 1].neurons[n].out;
+			tmp_err = output[outOffset + n] - last.out[n];
 			if (tmp_err < 0)
 				output_error -= tmp_err;
 			else
@@ -55,19 +117,24 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 	}
 
 	protected double _getMaxError(Vector<Double> input, Vector<Double> output) {
+		_copyToBuffers(input, output);
+		return _getMaxError(inBuf, 0, outBuf, 0);
+	}
+
+	protected double _getMaxError(double[] input, int inOffset, double[] output, int outOffset) {
 
 		double tmp_err;
 		double output_error;
 
-		int layer_count = netFF.getLayerCount();
+		Layer last = netFF.Lrs[netFF.getLayerCount() - 1];
 
-		netFF.setInput(input);
+		netFF.setInput(input, inOffset);
 
 		output_error = 0.0;
 
-		for (int n = 0; n < netFF.Lrs[layer_count - 1].nCount; n++) {
+		for (int n = 0; n < last.nCount; n++) {
 
-			tmp_err = output.get(n) - netFF.Lrs[layer_count - 1].neurons[n].out;
+			tmp_err = output[outOffset + n] - last.out[n];
 			if (tmp_err < 0)
 				tmp_err = -tmp_err;
 			if (tmp_err > output_error)	
@@ -77,20 +144,133 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 		return output_error;
 	}
 
+	/// Copies input and desired output vectors to inBuf and outBuf.
+	protected void _copyToBuffers(Vector<Double> input, Vector<Double> output) {
+		for (int i = 0; i < netFF.inputSize; i++) {
+			inBuf[i] = input.get(i);
+		}
+		int size = netFF.Lrs[netFF.lCount - 1].nCount;
+		for (int i = 0; i < size; i++) {
+			outBuf[i] = output.get(i);
+		}
+	}
+
 	/// Extends data buffers used in learning process.
 	/// Assigns maximum size needed for used neural network if buffers' sizes
 	/// are too small.
 	protected void _prepareBuffers() {
 
-		for (int i = 0; i < buff.length; i++) {
-			buff[i] = new Layer();
+		if (netFF == null) {
+			return;
 		}
 
 		// create data buffers using maximum size of network vector (input or layer)
 		int max = netFF.getMaxSize() + 1; // extending size by one (because of bias)
-		if (max > buff[0].nCount) {
-			buff[0].restructure(max, max);
-			buff[1].restructure(max, max);
+		if (max > buff[0].length) {
+			buff[0] = new double[max];
+			buff[1] = new double[max];
+			deriBuf = new double[max];
+		}
+		if (netFF.inputSize > inBuf.length) {
+			inBuf = new double[netFF.inputSize];
+		}
+		if (max > outBuf.length) {
+			outBuf = new double[max];
+		}
+	}
+
+	/// Creates gradient buffers of a mini-batch matching the network (existing
+	/// buffers are kept if they match).
+	protected void _prepareGradients() {
+		boolean match = (grad != null && grad.length == netFF.lCount);
+		for (int l = 0; match && l < netFF.lCount; l++) {
+			match = (grad[l].length == netFF.Lrs[l].weights.length);
+		}
+		if (!match) {
+			grad = new double[netFF.lCount][];
+			for (int l = 0; l < netFF.lCount; l++) {
+				grad[l] = new double[netFF.Lrs[l].weights.length];
+			}
+			batchCount = 0;
+		}
+	}
+
+	/// Applies weight changes to the given layer.
+	/// The change of a weight is eta * error of a neuron * input value
+	/// (1.0 for the bias weight).
+	protected void _changeWeights(int l, double[] err, double[] input, int offset) {
+
+		Layer lr = netFF.Lrs[l];
+		int inputs = lr.wCount - 1;
+		int row = 0;
+		double change;
+
+		for (int n = 0; n < lr.nCount; n++) {
+			change = eta * err[n];
+			Kernels.axpy(change, input, offset, lr.weights, row, inputs);
+			// bias value (input = 1.0)
+			lr.weights[row + inputs] += change;
+			row += lr.wCount;
+		}
+	}
+
+	/// Applies weight changes to the given layer for a sparse input - only
+	/// weights of non-zero inputs and bias weights are changed.
+	protected void _changeWeights(int l, double[] err, int[] index, double[] value, int count) {
+
+		Layer lr = netFF.Lrs[l];
+		int inputs = lr.wCount - 1;
+		int row = 0;
+		double change;
+
+		for (int n = 0; n < lr.nCount; n++) {
+			change = eta * err[n];
+			for (int k = 0; k < count; k++) {
+				lr.weights[row + index[k]] += change * value[k];
+			}
+			// bias value (input = 1.0)
+			lr.weights[row + inputs] += change;
+			row += lr.wCount;
+		}
+	}
+
+	/// Sets to zero weights of the layer excluded by the pruning mask.
+	protected void _applyMask(int l) {
+		double[] weights = netFF.Lrs[l].weights;
+		boolean[] keep = mask[l];
+
+		for (int w = 0; w < weights.length; w++) {
+			if (!keep[w]) {
+				weights[w] = 0.0;
+			}
+		}
+	}
+
+	/// Sets to zero weights of the given inputs (and bias weights) of the layer
+	/// excluded by the pruning mask.
+	protected void _applyMask(int l, int[] index, int count) {
+		Layer lr = netFF.Lrs[l];
+		boolean[] keep = mask[l];
+		int inputs = lr.wCount - 1;
+
+		for (int row = 0; row < lr.weights.length; row += lr.wCount) {
+			for (int k = 0; k < count; k++) {
+				if (!keep[row + index[k]])
+					lr.weights[row + index[k]] = 0.0;
+			}
+			if (!keep[row + inputs])
+				lr.weights[row + inputs] = 0.0;
+		}
+	}
+
+	/// Calculates derivatives of the activation function for all neurons of the
+	/// layer and stores them in deriBuf. Uses outputs of neurons if the function
+	/// supports it (no need to calculate the function again).
+	protected void _calcDerivatives(AFunction fun, Layer lr) {
+		if (fun.hasOutputDerivative()) {
+			fun.deriFromOut(lr.out, deriBuf, 0, lr.nCount);
+		} else {
+			fun.deri(lr.mpot, deriBuf, 0, lr.nCount);
 		}
 	}
 
@@ -120,46 +300,179 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 		if (netFF == null) {
 			throw new NeuroException("Neural Network is not assigned");
 		}
+		if (netFF.getLayerCount() == 0) {
+			throw new NeuroException("Neural network has no layers");
+		}
 
-		int layer_count = netFF.getLayerCount();
+		_copyToBuffers(input, output);
+		learnOneStep(inBuf, 0, outBuf, 0);
+	}
+
+	@Override
+	public void learnOneStep(double[] input, int inOffset, double[] output, int outOffset) throws NeuroException {
 
-		if (layer_count == 0) {
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned");
+		}
+		if (netFF.getLayerCount() == 0) {
 			throw new NeuroException("Neural network has no layers");
 		}
 
+		if (batchSize > 1) {
+			_prepareGradients();
+		}
+
+		// calculate intermediate and last results before changes
+		netFF.setInput(input, inOffset);
+
+		double[] err = _backPropagate(output, outOffset);
+
+		// change weights of the first layer (its input is the input vector)
+		_update(0, err, input, inOffset);
+		_endStep();
+	}
+
+	/**
+	 * Learning step for a sparse input vector. Only weights of the first layer
+	 * connected to non-zero inputs (and bias weights) are changed.
+	 */
+	@Override
+	public void learnOneStep(SparseDataVector input, double[] output, int outOffset) throws NeuroException {
+
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned");
+		}
+		if (netFF.getLayerCount() == 0) {
+			throw new NeuroException("Neural network has no layers");
+		}
+		if (input.size() != netFF.inputSize) {
+			throw new NeuroException("Size of sparse input vector does not match input size of the network.");
+		}
+
+		if (batchSize > 1) {
+			_prepareGradients();
+		}
+
 		// calculate intermediate and last results before changes
 		netFF.setInput(input);
 
-		int l, n, n_tmp, w;
+		double[] err = _backPropagate(output, outOffset);
+
+		// change weights of the first layer connected to non-zero inputs
+		if (batchSize > 1) {
+			_accumulate(0, err, input.getIndexes(), input.getValues(), input.getCount());
+		} else {
+			_changeWeights(0, err, input.getIndexes(), input.getValues(), input.getCount());
+			if (mask != null) {
+				_applyMask(0, input.getIndexes(), input.getCount());
+			}
+		}
+		_endStep();
+	}
+
+	/**
+	 * Applies weight changes accumulated in the current mini-batch (if any).
+	 * Does nothing in online mode.
+	 */
+	public void finishBatch() {
+		if (batchCount == 0)
+			return;
+
+		double scale = eta / batchCount;
+		for (int l = 0; l < netFF.lCount; l++) {
+			_applyGradient(l, scale);
+			if (mask != null) {
+				_applyMask(l);
+			}
+			Arrays.fill(grad[l], 0.0);
+		}
+		batchCount = 0;
+		netFF.markModified();
+	}
+
+	/// Finishes a learning step - counts samples of a mini-batch and applies
+	/// the batch when it is complete.
+	protected void _endStep() {
+		if (batchSize > 1) {
+			batchCount++;
+			if (batchCount >= batchSize) {
+				finishBatch();
+			}
+		} else {
+			netFF.markModified();
+		}
+	}
+
+	/// Changes weights of the layer (online mode) or adds the changes to the
+	/// gradient of the mini-batch.
+	protected void _update(int l, double[] err, double[] input, int offset) {
+		if (batchSize > 1) {
+			_accumulate(l, err, input, offset);
+		} else {
+			_changeWeights(l, err, input, offset);
+			if (mask != null) {
+				_applyMask(l);
+			}
+		}
+	}
+
+	/// Adds changes of weights of the layer to the gradient of the mini-batch.
+	protected void _accumulate(int l, double[] err, double[] input, int offset) {
+
+		Layer lr = netFF.Lrs[l];
+		double[] g = grad[l];
+		int inputs = lr.wCount - 1;
+		int row = 0;
+
+		for (int n = 0; n < lr.nCount; n++) {
+			Kernels.axpy(err[n], input, offset, g, row, inputs);
+			// bias value (input = 1.0)
+			g[row + inputs] += err[n];
+			row += lr.wCount;
+		}
+	}
+
+	/// Adds changes of weights of the layer for a sparse input to the gradient
+	/// of the mini-batch.
+	protected void _accumulate(int l, double[] err, int[] index, double[] value, int count) {
+
+		Layer lr = netFF.Lrs[l];
+		double[] g = grad[l];
+		int inputs = lr.wCount - 1;
+		int row = 0;
+
+		for (int n = 0; n < lr.nCount; n++) {
+			for (int k = 0; k < count; k++) {
+				g[row + index[k]] += err[n] * value[k];
+			}
+			// bias value (input = 1.0)
+			g[row + inputs] += err[n];
+			row += lr.wCount;
+		}
+	}
+
+	/// Applies the accumulated gradient multiplied by scale to weights of the
+	/// layer.
+	protected void _applyGradient(int l, double scale) {
+		Kernels.axpy(scale, grad[l], 0, netFF.Lrs[l].weights, 0, grad[l].length);
+	}
+
+	/// Calculates errors of all layers for results currently stored in the
+	/// network and changes weights of all layers except the first one.
+	/// Returns errors of the first layer.
+	protected double[] _backPropagate(double[] output, int outOffset) {
+
+		int layer_count = netFF.getLayerCount();
+		int l, n, n_tmp;
 		int prev = 0;
 		int actu = 1;
-		double temp;
+		Layer lr, next;
 
 		// calculate errors of the last layer
-		for (n = 0; n < netFF.Lrs[layer_count - 1].nCount; n++) {
-
-			// calculate error for this neuron
-			buff[actu].neurons[n].out = (netFF.outActFun.deri(netFF.Lrs[layer_count - 1].neurons[n].mpot))
-					* (output.get(n) - netFF.Lrs[layer_count - 1].neurons[n].out);
-
-			// calculate weights' change for this neuron
-			// first bias value (input = 1.0)
-			buff[actu].neurons[n].Weights[netFF.Lrs[layer_count - 1].neurons[n].wCount - 1] = eta
-					* buff[actu].neurons[n].out;
-
-			// then the rest of values
-			if (layer_count == 1) { // if only one layer => take input vector as
-									// an input to the layer
-				for (w = 0; w < netFF.Lrs[layer_count - 1].neurons[n].wCount; w++) {
-					buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out * input.get(w);
-				}
-			} else { // if more than one layer => take output of previous layer as an input
-				for (w = 0; w < netFF.Lrs[layer_count - 1].neurons[n].wCount - 1; w++) {
-					buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out
-							* netFF.Lrs[layer_count - 2].neurons[w].out;
-
-				}
-			}
+		lr = netFF.Lrs[layer_count - 1];
+		_calcDerivatives(netFF.outActFun, lr);
+		for (n = 0; n < lr.nCount; n++) {
+			buff[actu][n] = deriBuf[n] * (output[outOffset + n] - lr.out[n]);
 		}
 
 		actu = actu ^ 1; // change actual index to an opposite state (0 <-> 1)
@@ -168,54 +481,33 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 		// calculate errors for the rest of layers
 		for (l = layer_count - 2; l >= 0; l--) {
 
-			// calculate errors for one layer
-			for (n = 0; n < netFF.Lrs[l].nCount; n++) {
-
-				// calculate weighted sum of previous errors
-				temp = 0.0;
-				for (n_tmp = 0; n_tmp < netFF.Lrs[l + 1].nCount; n_tmp++) {
-					temp += netFF.Lrs[l + 1].neurons[n_tmp].Weights[n] * buff[prev].neurons[n_tmp].out;
-				}
+			lr = netFF.Lrs[l];
+			next = netFF.Lrs[l + 1];
 
-				// calculate error for this neuron
-				buff[actu].neurons[n].out = netFF.actFun.deri(netFF.Lrs[l].neurons[n].mpot) * temp;
-
-				// calculate weights' change for this neuron
-				// first bias value (input = 1.0)
-				buff[actu].neurons[n].Weights[netFF.Lrs[l].neurons[n].wCount - 1] = eta * buff[actu].neurons[n].out;
-
-				// then the rest of values
-				if (l == 0) { // if the first layer => take input vector as an input to the layer
-					for (w = 0; w < netFF.Lrs[l].neurons[n].wCount - 1; w++) {
-						buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out * input.get(w);
-					}
-				} else { // if not the first layer => take output of previous layer as an input
-					for (w = 0; w < netFF.Lrs[l].neurons[n].wCount - 1; w++) {
-						buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out
-								* netFF.Lrs[l - 1].neurons[w].out;
-					}
-				}
+			// calculate weighted sums of previous errors - row by row of the
+			// next layer's weights, so the weights are read sequentially
+			for (n = 0; n < lr.nCount; n++) {
+				buff[actu][n] = 0.0;
+			}
+			for (n_tmp = 0; n_tmp < next.nCount; n_tmp++) {
+				Kernels.axpy(buff[prev][n_tmp], next.weights, n_tmp * next.wCount, buff[actu], 0, lr.nCount);
 			}
 
-			// change weights of a previous layer
-			for (n = 0; n < netFF.Lrs[l + 1].nCount; n++) {
-				for (w = 0; w < netFF.Lrs[l + 1].neurons[n].wCount; w++) {
-					netFF.Lrs[l + 1].neurons[n].Weights[w] += buff[prev].neurons[n].Weights[w];
-				}
+			// calculate errors for one layer
+			_calcDerivatives(netFF.actFun, lr);
+			for (n = 0; n < lr.nCount; n++) {
+				buff[actu][n] = deriBuf[n] * buff[actu][n];
 			}
 
+			// change weights of a previous layer (its input is the output of this layer)
+			_update(l + 1, buff[prev], lr.out, 0);
+
 			actu = actu ^ 1; // change actual index to an opposite state (0 <-> 1)
 			prev = prev ^ 1; // change previous index to an opposite state (0 <-> 1)
 
 		}
 
-		// change weights of the first layer
-		for (n = 0; n < netFF.Lrs[0].nCount; n++) {
-			for (w = 0; w < netFF.Lrs[0].neurons[n].wCount; w++) {
-				netFF.Lrs[0].neurons[n].Weights[w] += buff[prev].neurons[n].Weights[w];
-			}
-		}
-
+		return buff[prev];
 	}
 
 	@Override
@@ -252,12 +544,16 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 
 		_prepareBuffers();
 
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
 		while ((iter_count < max_iter) && (last_error > max_error)) {
 			last_error = 0.0;
 			for (i = 0; i < data_size; i++) {
-				learnOneStep(input.get(i).getData(), output.get(i).getData());
-				last_error += _calcError(input.get(i).getData(), output.get(i).getData());
+				learnOneStep(in[i], 0, out[i], 0);
+				last_error += _calcError(in[i], 0, out[i], 0);
 			}
+			finishBatch();
 			iter_count++;
 		}
 		last_iter = iter_count;
@@ -293,15 +589,19 @@ public class BackPAlgBare extends SupervisedLearnAlg {
 
 		_prepareBuffers();
 
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
 		while ((iter_count < max_iter) && (last_error > max_error)) {
 			last_error = 0.0;
 			for (i = 0; i < data_size; i++) {
-				learnOneStep(input.get(i).getData(), output.get(i).getData());
-				double error = _getMaxError(input.get(i).getData(), output.get(i).getData());
+				learnOneStep(in[i], 0, out[i], 0);
+				double error = _getMaxError(in[i], 0, out[i], 0);
 				if (error > last_error) {
 					last_error = error;
 				}
 			}
+			finishBatch();
 			iter_count++;
 		}
 		last_iter = iter_count;
@@ -0,0 +1,280 @@
+package neuralnetwork.learningalg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Asynchronous ("Hogwild") back-propagation. Several tasks process different
+ * samples at the same time and change weights of the shared network directly,
+ * without locks - an update may be lost or calculated from weights partially
+ * changed by another task. This works well when updates of different samples
+ * touch mostly different weights (sparse inputs - weights of zero inputs are
+ * not changed), results are not deterministic.
+ *
+ * Staleness of an update is the number of updates made by other tasks between
+ * reading weights and applying the update. An update staler than the cap is
+ * calculated again from current weights, at most MAX_RECALCULATIONS times -
+ * then it is dropped. The cap is checked just before the update is applied,
+ * so only updates applied by other tasks at the same moment are not counted.
+ * Without a cap (the default) updates are not counted at all, so tasks share
+ * no counter.
+ *
+ * Writes of double values are atomic only on 64-bit JVMs.
+ */
+public class BackPAlgHogwild extends SupervisedLearnAlg {
+
+	public static final int DEFAULT_MAX_STALENESS = Integer.MAX_VALUE;
+	public static final int MAX_RECALCULATIONS = 8;
+
+	protected double eta;
+	protected int parallelism;
+	protected int maxStaleness;
+	protected Executor executor;
+
+	// number of updates applied by all tasks
+	private final AtomicLong updates = new AtomicLong();
+	// number of updates calculated again because of staleness
+	private final AtomicLong recalculated = new AtomicLong();
+	// number of updates dropped because of staleness
+	private final AtomicLong dropped = new AtomicLong();
+
+	// buffers of learnOneStep()
+	private GradientWorker worker;
+
+	// statistics of tasks of the last learning
+	private long[] samples;
+	private long[] nanos;
+	private double[] errors;
+	private double[] maxErrors;
+
+	public BackPAlgHogwild() {
+		super();
+		eta = DEFAULT_ETA;
+		parallelism = Runtime.getRuntime().availableProcessors();
+		maxStaleness = DEFAULT_MAX_STALENESS;
+		executor = ForkJoinPool.commonPool();
+	}
+
+	public BackPAlgHogwild(BackPAlgHogwild src) {
+		super(src);
+		eta = src.eta;
+		parallelism = src.parallelism;
+		maxStaleness = src.maxStaleness;
+		executor = src.executor;
+	}
+
+	public void setEta(double e) {
+		eta = e;
+	}
+
+	/**
+	 * @param tasks number of tasks learning at the same time
+	 */
+	public void setParallelism(int tasks) {
+		if (tasks < 1)
+			return;
+		parallelism = tasks;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param updates maximum number of updates of other tasks between reading
+	 *                weights and applying an update
+	 */
+	public void setMaxStaleness(int updates) {
+		if (updates < 0)
+			return;
+		maxStaleness = updates;
+	}
+
+	public int getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * @param executor executor running the tasks (the common ForkJoinPool by
+	 *                 default)
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void setNeuralNetwork(NNetFF inetwork) {
+		super.setNeuralNetwork(inetwork);
+		worker = null;
+		samples = null;
+	}
+
+	/**
+	 * @return number of samples processed per second by subsequent tasks of the
+	 *         last learning (null before learning)
+	 */
+	public double[] getSamplesPerSecond() {
+		if (samples == null)
+			return null;
+
+		double[] result = new double[samples.length];
+		for (int t = 0; t < samples.length; t++) {
+			result[t] = (nanos[t] > 0) ? samples[t] * 1e9 / nanos[t] : 0.0;
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of updates calculated again because of the staleness cap
+	 */
+	public long getRecalculatedUpdates() {
+		return recalculated.get();
+	}
+
+	/**
+	 * @return number of updates dropped because they were still staler than the
+	 *         cap after MAX_RECALCULATIONS recalculations
+	 */
+	public long getDroppedUpdates() {
+		return dropped.get();
+	}
+
+	@Override
+	public void learnOneStep(double[] input, int inOffset, double[] output, int outOffset) throws NeuroException {
+		_check();
+
+		if (worker == null || !worker.fits()) {
+			worker = new GradientWorker(netFF);
+		}
+		worker.forward(input, inOffset);
+		worker.backward(output, outOffset);
+		worker.apply(eta, input, inOffset);
+		netFF.markModified();
+	}
+
+	@Override
+	public double learn(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, false);
+	}
+
+	@Override
+	public double learnForMaxError(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, true);
+	}
+
+	private double _learn(DataPackage input, DataPackage output, boolean maxErrorMode) throws NeuroException {
+		_check();
+		if (input.getMinRowSize() < netFF.inputSize) {
+			throw new NeuroException("DataVector size of input package is too small to match input size of the network.");
+		}
+		if (output.getMinRowSize() < netFF.Lrs[netFF.lCount - 1].nCount) {
+			throw new NeuroException("Size of output DataVector is too small to match output size of the network.");
+		}
+
+		int data_size = Math.min(input.size(), output.size());
+		int tasks = Math.max(1, Math.min(parallelism, data_size));
+
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
+		GradientWorker[] workers = new GradientWorker[tasks];
+		for (int t = 0; t < tasks; t++) {
+			workers[t] = new GradientWorker(netFF);
+		}
+		samples = new long[tasks];
+		nanos = new long[tasks];
+		errors = new double[tasks];
+		maxErrors = new double[tasks];
+		recalculated.set(0);
+		dropped.set(0);
+
+		long iter_count = 0;
+		last_error = max_error + 1.0;
+
+		while ((iter_count < max_iter) && (last_error > max_error)) {
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+			for (int t = 0; t < tasks; t++) {
+				int task = t;
+				futures[t] = CompletableFuture.runAsync(() -> _learnPart(workers[task], task, tasks, in, out, data_size),
+						executor);
+			}
+			CompletableFuture.allOf(futures).join();
+
+			last_error = 0.0;
+			for (int t = 0; t < tasks; t++) {
+				if (maxErrorMode) {
+					last_error = Math.max(last_error, maxErrors[t]);
+				} else {
+					last_error += errors[t];
+				}
+			}
+			iter_count++;
+		}
+
+		netFF.markModified();
+		last_iter = iter_count;
+		return last_error;
+	}
+
+	/// Learns samples task, task + tasks, task + 2 * tasks ... (one epoch).
+	private void _learnPart(GradientWorker worker, int task, int tasks, double[][] in, double[][] out,
+			int data_size) {
+		long start = System.nanoTime();
+		double error = 0.0;
+		double maxError = 0.0;
+		long count = 0;
+		boolean capped = (maxStaleness != Integer.MAX_VALUE);
+
+		for (int i = task; i < data_size; i += tasks) {
+			long version = capped ? updates.get() : 0;
+			worker.forward(in[i], 0);
+			double e = worker.backward(out[i], 0);
+
+			if (!capped) {
+				worker.apply(eta, in[i], 0);
+			} else {
+				int attempts = 0;
+				while (updates.get() - version > maxStaleness && attempts < MAX_RECALCULATIONS) {
+					recalculated.incrementAndGet();
+					attempts++;
+					version = updates.get();
+					worker.forward(in[i], 0);
+					e = worker.backward(out[i], 0);
+				}
+
+				if (updates.get() - version > maxStaleness) {
+					dropped.incrementAndGet();
+				} else {
+					worker.apply(eta, in[i], 0);
+					updates.incrementAndGet();
+				}
+			}
+
+			// error of the evaluation the update was calculated from
+			error += e;
+			maxError = Math.max(maxError, worker.maxError);
+			count++;
+		}
+
+		errors[task] = error;
+		maxErrors[task] = maxError;
+		samples[task] += count;
+		nanos[task] += System.nanoTime() - start;
+	}
+
+	private void _check() throws NeuroException {
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned.");
+		}
+		if (netFF.lCount <= 0) {
+			throw new NeuroException("Neural Network has no layers.");
+		}
+	}
+
+}
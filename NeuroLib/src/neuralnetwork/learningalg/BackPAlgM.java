@@ -1,10 +1,8 @@
 package neuralnetwork.learningalg;
 
-import java.util.Vector;
-
 import neuralnetwork.data.DataPackage;
-import neuralnetwork.data.DataVector;
 import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.Layer;
 import neuralnetwork.network.NNetFF;
 
 public class BackPAlgM extends BackPAlgBare {
@@ -72,120 +70,103 @@ public class BackPAlgM extends BackPAlgBare {
 	}
 
 	@Override
-	public void learnOneStep(Vector<Double> input, Vector<Double> output) throws NeuroException {
-
-		if (netFF == null) {
-			throw new NeuroException("Neural Network is not assigned.");
-		}
-
-		int layer_count = netFF.getLayerCount();
+	protected void _changeWeights(int l, double[] err, double[] input, int offset) {
 
-		if (layer_count == 0) {
-			throw new NeuroException("Neural Network has no layers");
-		}
-
-		// calculate intermediate and last results before changes
-		netFF.setInput(input);
-
-		int l, n, n_tmp, w;
-		int prev = 0;
-		int actu = 1;
+		Layer lr = netFF.Lrs[l];
+		double[] last = wBackup.Lrs[l].weights;
+		int inputs = lr.wCount - 1;
+		int row = 0;
+		double change;
 		double temp;
 
-		// calculate errors of the last layer
-		for (n = 0; n < netFF.Lrs[layer_count - 1].nCount; n++) {
-
-			// calculate error for this neuron
-			buff[actu].neurons[n].out = (netFF.outActFun.deri(netFF.Lrs[layer_count - 1].neurons[n].mpot))
-					* (output.get(n) - netFF.Lrs[layer_count - 1].neurons[n].out);
-
-			// calculate weights' change for this neuron
-			// first bias value (input = 1.0)
-			buff[actu].neurons[n].Weights[netFF.Lrs[layer_count - 1].neurons[n].wCount - 1] = eta
-					* buff[actu].neurons[n].out;
-
-			// then the rest of values
-			if (layer_count == 1) { // if only one layer => take input vector as
-									// an input to the layer
-				for (w = 0; w < netFF.Lrs[layer_count - 1].neurons[n].wCount; w++) {
-					buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out * input.get(w);
-				}
-			} else { // if more than one layer => take output of previous layer as an input
-				for (w = 0; w < netFF.Lrs[layer_count - 1].neurons[n].wCount - 1; w++) {
-					buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out
-							* netFF.Lrs[layer_count - 2].neurons[w].out;
-				}
+		for (int n = 0; n < lr.nCount; n++) {
+			change = eta * err[n];
+			for (int w = 0; w < inputs; w++) {
+				// calculate momentum part : last change times momentum factor
+				temp = M * last[row + w];
+				// calculate and save weight change : actual error + momentum part
+				last[row + w] = change * input[offset + w] + temp;
+				// apply actual change
+				lr.weights[row + w] += last[row + w];
 			}
+			// bias value (input = 1.0)
+			last[row + inputs] = change + M * last[row + inputs];
+			lr.weights[row + inputs] += last[row + inputs];
+			row += lr.wCount;
 		}
+	}
 
-		actu = actu ^ 1; // change actual index to an opposite state (0 <-> 1)
-		prev = prev ^ 1; // change previous index to an opposite state (0 <-> 1)
-
-		// calculate errors for the rest of layers
-		for (l = layer_count - 2; l >= 0; l--) {
-
-			// calculate errors for one layer
-			for (n = 0; n < netFF.Lrs[l].nCount; n++) {
-
-				// calculate weighted sum to previous errors
-				temp = 0.0;
-				for (n_tmp = 0; n_tmp < netFF.Lrs[l + 1].nCount; n_tmp++) {
-					temp += netFF.Lrs[l + 1].neurons[n_tmp].Weights[n] * buff[prev].neurons[n_tmp].out;
-				}
-
-				// calculate error for this neuron
-				buff[actu].neurons[n].out = netFF.actFun.deri(netFF.Lrs[l].neurons[n].mpot) * temp;
-
-				// calculate weights' change for this neuron
-				// first bias value (input = 1.0)
-				buff[actu].neurons[n].Weights[netFF.Lrs[l].neurons[n].wCount - 1] = eta * buff[actu].neurons[n].out;
-
-				// then the rest of values
-				if (l == 0) { // if the first layer => take input vector as an input to the layer
-					for (w = 0; w < netFF.Lrs[l].neurons[n].wCount - 1; w++) {
-						buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out * input.get(w);
-					}
-				} else { // if not the first layer => take output of previous layer as an input
-					for (w = 0; w < netFF.Lrs[l].neurons[n].wCount - 1; w++) {
-						buff[actu].neurons[n].Weights[w] = eta * buff[actu].neurons[n].out
-								* netFF.Lrs[l - 1].neurons[w].out;
-					}
-				}
-			}
-
-			// change weights of a previous layer
-			for (n = 0; n < netFF.Lrs[l + 1].nCount; n++) {
-				for (w = 0; w < netFF.Lrs[l + 1].neurons[n].wCount; w++) {
-					// calculate momentum part : last change times momentum factor
-					temp = M * (wBackup.Lrs[l + 1].neurons[n].Weights[w]);
-					// calculate and save weight change : actual error + momentum part
-					wBackup.Lrs[l + 1].neurons[n].Weights[w] = buff[prev].neurons[n].Weights[w] + temp;
-					// apply actual change
-					netFF.Lrs[l + 1].neurons[n].Weights[w] += wBackup.Lrs[l + 1].neurons[n].Weights[w];
-				}
+	/// Sparse version with momentum. Momentum of weights of zero inputs is
+	/// neither applied nor decayed - it waits until the input is non-zero again.
+	@Override
+	protected void _changeWeights(int l, double[] err, int[] index, double[] value, int count) {
+
+		Layer lr = netFF.Lrs[l];
+		double[] last = wBackup.Lrs[l].weights;
+		int inputs = lr.wCount - 1;
+		int row = 0;
+		double change;
+		int w;
+
+		for (int n = 0; n < lr.nCount; n++) {
+			change = eta * err[n];
+			for (int k = 0; k < count; k++) {
+				w = row + index[k];
+				last[w] = change * value[k] + M * last[w];
+				lr.weights[w] += last[w];
 			}
+			// bias value (input = 1.0)
+			last[row + inputs] = change + M * last[row + inputs];
+			lr.weights[row + inputs] += last[row + inputs];
+			row += lr.wCount;
+		}
+	}
 
-			actu = actu ^ 1; // change actual index to an opposite state (0 <-> 1)
-			prev = prev ^ 1; // change previous index to an opposite state (0 <-> 1)
-
+	/// Applies the averaged gradient of a mini-batch with momentum - the last
+	/// change is the change of the previous batch.
+	@Override
+	protected void _applyGradient(int l, double scale) {
+		double[] g = grad[l];
+		double[] last = wBackup.Lrs[l].weights;
+		double[] weights = netFF.Lrs[l].weights;
+
+		for (int w = 0; w < g.length; w++) {
+			last[w] = scale * g[w] + M * last[w];
+			weights[w] += last[w];
 		}
+	}
 
-		// change weights of the first layer
-		for (n = 0; n < netFF.Lrs[0].nCount; n++) {
-			for (w = 0; w < netFF.Lrs[0].neurons[n].wCount; w++) {
-				// calculate momentum part : last change times momentum factor
-				temp = M * (wBackup.Lrs[0].neurons[n].Weights[w]);
-				// calculate and save weight change : actual error + momentum part
-				wBackup.Lrs[0].neurons[n].Weights[w] = buff[prev].neurons[n].Weights[w] + temp;
-				// apply actual change
-				netFF.Lrs[0].neurons[n].Weights[w] += wBackup.Lrs[0].neurons[n].Weights[w];
+	@Override
+	protected void _applyMask(int l) {
+		super._applyMask(l);
+
+		// clear momentum of masked weights
+		double[] last = wBackup.Lrs[l].weights;
+		boolean[] keep = mask[l];
+		for (int w = 0; w < last.length; w++) {
+			if (!keep[w]) {
+				last[w] = 0.0;
 			}
 		}
 	}
 
 	@Override
-	public void learnOneStep(DataVector input, DataVector output) throws NeuroException {
-		learnOneStep(input.getData(), output.getData());
+	protected void _applyMask(int l, int[] index, int count) {
+		super._applyMask(l, index, count);
+
+		// clear momentum of masked weights of the given inputs
+		Layer lr = netFF.Lrs[l];
+		double[] last = wBackup.Lrs[l].weights;
+		boolean[] keep = mask[l];
+		int inputs = lr.wCount - 1;
+		for (int row = 0; row < last.length; row += lr.wCount) {
+			for (int k = 0; k < count; k++) {
+				if (!keep[row + index[k]])
+					last[row + index[k]] = 0.0;
+			}
+			if (!keep[row + inputs])
+				last[row + inputs] = 0.0;
+		}
 	}
 
 	@Override
@@ -221,13 +202,17 @@ public class BackPAlgM extends BackPAlgBare {
 			M = lowestM;
 		}
 
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
 		while ((iter_count < max_iter) && (last_error > max_error)) {
 
 			last_error = 0.0;
 			for (i = 0; i < data_size; i++) {
-				learnOneStep(input.get(i).getData(), output.get(i).getData());
-				last_error += _calcError(input.get(i).getData(), output.get(i).getData());
+				learnOneStep(in[i], 0, out[i], 0);
+				last_error += _calcError(in[i], 0, out[i], 0);
 			}
+			finishBatch();
 
 			M -= stepM;
 			if (M < lowestM) {
@@ -276,16 +261,20 @@ public class BackPAlgM extends BackPAlgBare {
 			M = lowestM;
 		}
 
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
 		while ((iter_count < max_iter) && (last_error > max_error)) {
 
 			last_error = 0.0;
 			for (i = 0; i < data_size; i++) {
-				learnOneStep(input.get(i).getData(), output.get(i).getData());
-				double error = _getMaxError(input.get(i).getData(), output.get(i).getData());
+				learnOneStep(in[i], 0, out[i], 0);
+				double error = _getMaxError(in[i], 0, out[i], 0);
 				if (error > last_error) {
 					last_error = error;
 				}
 			}
+			finishBatch();
 
 			M -= stepM;
 			if (M < lowestM) {
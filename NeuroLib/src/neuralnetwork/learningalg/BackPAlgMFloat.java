@@ -0,0 +1,266 @@
+package neuralnetwork.learningalg;
+
+import neuralnetwork.actfun.AFunction;
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.data.FloatDataPackage;
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.NNetFloat;
+
+/**
+ * Back-propagation with momentum (the same method as BackPAlgM) calculated in
+ * single precision. learn() and learnForMaxError() convert the network to
+ * floats, train the NNetFloat copy and write the weights back to the assigned
+ * NNetFF at the end. Data sets are read from FloatDataPackage; DataPackage
+ * arguments are converted to it for the time of learning. learnOneStep() and
+ * mini-batch learning work in double precision as in BackPAlgM.
+ */
+public class BackPAlgMFloat extends BackPAlgM {
+
+	private NNetFloat netF;
+
+	// errors of two neighbouring layers (used alternately)
+	private float[][] errF = new float[2][0];
+	// derivatives of the activation function for one layer
+	private float[] deriF = new float[0];
+	// last weight changes (momentum) of subsequent layers
+	private float[][] lastF;
+
+	public BackPAlgMFloat() {
+		super();
+	}
+
+	public BackPAlgMFloat(BackPAlgMFloat src) {
+		super(src);
+	}
+
+	@Override
+	public double learn(DataPackage input, DataPackage output) throws NeuroException {
+		// mini-batch learning is done in double precision
+		if (batchSize > 1)
+			return super.learn(input, output);
+		return _learnFloat(new FloatDataPackage(input), new FloatDataPackage(output), false);
+	}
+
+	/**
+	 * Learning on data sets stored in single precision (mini-batches are not
+	 * supported - batch size is ignored).
+	 */
+	public double learn(FloatDataPackage input, FloatDataPackage output) throws NeuroException {
+		return _learnFloat(input, output, false);
+	}
+
+	@Override
+	public double learnForMaxError(DataPackage input, DataPackage output) throws NeuroException {
+		if (batchSize > 1)
+			return super.learnForMaxError(input, output);
+		return _learnFloat(new FloatDataPackage(input), new FloatDataPackage(output), true);
+	}
+
+	/**
+	 * Learning for maximum error on data sets stored in single precision
+	 * (mini-batches are not supported - batch size is ignored).
+	 */
+	public double learnForMaxError(FloatDataPackage input, FloatDataPackage output) throws NeuroException {
+		return _learnFloat(input, output, true);
+	}
+
+	private double _learnFloat(FloatDataPackage input, FloatDataPackage output, boolean maxErrorMode) throws NeuroException {
+
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned.");
+		}
+		if (netFF.lCount <= 0) {
+			throw new NeuroException("Neural Network has no layers.");
+		}
+		if (input.getMinRowSize() < netFF.inputSize) {
+			throw new NeuroException("DataVector size of input package is too small to match input size of the network.");
+		}
+		if (output.getMinRowSize() < netFF.Lrs[netFF.lCount - 1].nCount) {
+			throw new NeuroException("Size of output DataVector is too small to match output size of the network.");
+		}
+
+		long iter_count = 0;
+		int i, data_size;
+		double old_M = M;
+		double error;
+
+		last_error = max_error + 1.0;
+
+		if (input.size() >= output.size()) {
+			data_size = output.size();
+		} else {
+			data_size = input.size();
+		}
+
+		_prepareFloatBuffers();
+		if (M < lowestM) {
+			M = lowestM;
+		}
+
+		while ((iter_count < max_iter) && (last_error > max_error)) {
+
+			last_error = 0.0;
+			for (i = 0; i < data_size; i++) {
+				float[] in = input.get(i);
+				float[] out = output.get(i);
+				_learnOneStepFloat(in, out);
+				error = _calcErrorFloat(in, out, maxErrorMode);
+				if (!maxErrorMode) {
+					last_error += error;
+				} else if (error > last_error) {
+					last_error = error;
+				}
+			}
+
+			M -= stepM;
+			if (M < lowestM) {
+				M = lowestM;
+			}
+			iter_count++;
+
+		}
+
+		netF.copyWeightsTo(netFF);
+
+		last_iter = iter_count;
+		M = old_M;
+
+		return last_error;
+	}
+
+	/// Creates single precision copy of the network and buffers used in learning.
+	private void _prepareFloatBuffers() {
+		netF = new NNetFloat(netFF);
+
+		int max = netF.getMaxSize() + 1;
+		if (max > errF[0].length) {
+			errF[0] = new float[max];
+			errF[1] = new float[max];
+			deriF = new float[max];
+		}
+
+		lastF = new float[netF.lCount][];
+		for (int l = 0; l < netF.lCount; l++) {
+			lastF[l] = new float[netF.weights[l].length];
+		}
+	}
+
+	/// Returns sum of absolute errors or the maximum absolute error of outputs.
+	private double _calcErrorFloat(float[] input, float[] output, boolean maxErrorMode) {
+		double tmp_err;
+		double output_error = 0.0;
+		float[] result = netF.out[netF.lCount - 1];
+
+		netF.setInput(input, 0);
+
+		for (int n = 0; n < result.length; n++) {
+			tmp_err = output[n] - result[n];
+			if (tmp_err < 0)
+				tmp_err = -tmp_err;
+			if (!maxErrorMode) {
+				output_error += tmp_err;
+			} else if (tmp_err > output_error) {
+				output_error = tmp_err;
+			}
+		}
+		return output_error;
+	}
+
+	private void _learnOneStepFloat(float[] input, float[] output) {
+
+		int layer_count = netF.lCount;
+		int l, n, n_tmp;
+		int prev = 0;
+		int actu = 1;
+
+		// calculate intermediate and last results before changes
+		netF.setInput(input, 0);
+
+		// calculate errors of the last layer
+		l = layer_count - 1;
+		_calcDerivativesFloat(netF.outActFun, l);
+		for (n = 0; n < netF.nCount[l]; n++) {
+			errF[actu][n] = deriF[n] * (output[n] - netF.out[l][n]);
+		}
+
+		actu = actu ^ 1; // change actual index to an opposite state (0 <-> 1)
+		prev = prev ^ 1; // change previous index to an opposite state (0 <-> 1)
+
+		// calculate errors for the rest of layers
+		for (l = layer_count - 2; l >= 0; l--) {
+
+			float[] next = netF.weights[l + 1];
+			int nextW = netF.wCount[l + 1];
+
+			// calculate weighted sums of previous errors (row by row of the next
+			// layer's weights)
+			for (n = 0; n < netF.nCount[l]; n++) {
+				errF[actu][n] = 0.0f;
+			}
+			for (n_tmp = 0; n_tmp < netF.nCount[l + 1]; n_tmp++) {
+				float e = errF[prev][n_tmp];
+				int row = n_tmp * nextW;
+				for (n = 0; n < netF.nCount[l]; n++) {
+					errF[actu][n] += e * next[row + n];
+				}
+			}
+
+			// calculate errors for one layer
+			_calcDerivativesFloat(netF.actFun, l);
+			for (n = 0; n < netF.nCount[l]; n++) {
+				errF[actu][n] = deriF[n] * errF[actu][n];
+			}
+
+			// change weights of a previous layer (its input is the output of this layer)
+			_changeWeightsFloat(l + 1, errF[prev], netF.out[l]);
+
+			actu = actu ^ 1; // change actual index to an opposite state (0 <-> 1)
+			prev = prev ^ 1; // change previous index to an opposite state (0 <-> 1)
+		}
+
+		// change weights of the first layer (its input is the input vector)
+		_changeWeightsFloat(0, errF[prev], input);
+	}
+
+	private void _calcDerivativesFloat(AFunction fun, int l) {
+		if (fun.hasOutputDerivative()) {
+			fun.deriFromOut(netF.out[l], deriF, 0, netF.nCount[l]);
+		} else {
+			fun.deri(netF.mpot[l], deriF, 0, netF.nCount[l]);
+		}
+	}
+
+	private void _changeWeightsFloat(int l, float[] err, float[] input) {
+		float[] weights = netF.weights[l];
+		float[] last = lastF[l];
+		int inputs = netF.wCount[l] - 1;
+		int row = 0;
+		float change;
+		float m = (float) M;
+		float e = (float) eta;
+
+		for (int n = 0; n < netF.nCount[l]; n++) {
+			change = e * err[n];
+			for (int w = 0; w < inputs; w++) {
+				// actual error + momentum part
+				last[row + w] = change * input[w] + m * last[row + w];
+				weights[row + w] += last[row + w];
+			}
+			// bias value (input = 1.0)
+			last[row + inputs] = change + m * last[row + inputs];
+			weights[row + inputs] += last[row + inputs];
+			row += netF.wCount[l];
+		}
+
+		// keep pruned weights at zero
+		if (mask != null) {
+			for (int w = 0; w < weights.length; w++) {
+				if (!mask[l][w]) {
+					weights[w] = 0.0f;
+					last[w] = 0.0f;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+package neuralnetwork.learningalg;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Synchronous data-parallel back-propagation with momentum. Every mini-batch
+ * is split into equal parts processed by separate tasks - each task has its
+ * own buffers for intermediate results and weight changes, weights are only
+ * read. Weight changes of the tasks are then summed in a tree of pairs (always
+ * in the same order) and the average change is applied once per batch, so
+ * results depend only on data, batch size and the number of tasks.
+ *
+ * The error returned by learn() is calculated during the epoch (for weights
+ * before the update of a batch), not after the epoch.
+ */
+public class BackPAlgParallel extends SupervisedLearnAlg {
+
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	public static final double DEFAULT_MOMENTUM = 0.0;
+
+	protected double eta;
+	protected double M;
+	protected int batchSize;
+	protected int parallelism;
+	protected Executor executor;
+
+	// buffers of tasks
+	private ParallelGradient gradient;
+	// last weight changes (momentum)
+	private double[][] last;
+
+	public BackPAlgParallel() {
+		super();
+		eta = DEFAULT_ETA;
+		M = DEFAULT_MOMENTUM;
+		batchSize = DEFAULT_BATCH_SIZE;
+		parallelism = Runtime.getRuntime().availableProcessors();
+		executor = ForkJoinPool.commonPool();
+	}
+
+	public BackPAlgParallel(BackPAlgParallel src) {
+		super(src);
+		eta = src.eta;
+		M = src.M;
+		batchSize = src.batchSize;
+		parallelism = src.parallelism;
+		executor = src.executor;
+	}
+
+	public void setEta(double e) {
+		eta = e;
+	}
+
+	public void setMomentum(double momentum) {
+		M = momentum;
+	}
+
+	/**
+	 * @param size number of samples per weight update
+	 */
+	public void setBatchSize(int size) {
+		if (size < 1)
+			return;
+		batchSize = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param tasks number of tasks processing one batch
+	 */
+	public void setParallelism(int tasks) {
+		if (tasks < 1)
+			return;
+		parallelism = tasks;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param executor executor running the tasks (the common ForkJoinPool by
+	 *                 default)
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void setNeuralNetwork(NNetFF inetwork) {
+		super.setNeuralNetwork(inetwork);
+		gradient = null;
+	}
+
+	/**
+	 * Changes weights for one sample (a batch of one sample, calculated in the
+	 * calling thread).
+	 */
+	@Override
+	public void learnOneStep(double[] input, int inOffset, double[] output, int outOffset) throws NeuroException {
+		_check();
+		_prepareBuffers();
+
+		double[][] in = { Arrays.copyOfRange(input, inOffset, inOffset + netFF.inputSize) };
+		double[][] out = { Arrays.copyOfRange(output, outOffset, outOffset + netFF.Lrs[netFF.lCount - 1].nCount) };
+		gradient.compute(in, out, 0, 1, Runnable::run);
+		_applyGradient(1);
+	}
+
+	@Override
+	public double learn(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, false);
+	}
+
+	@Override
+	public double learnForMaxError(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, true);
+	}
+
+	private double _learn(DataPackage input, DataPackage output, boolean maxErrorMode) throws NeuroException {
+		_check();
+		if (input.getMinRowSize() < netFF.inputSize) {
+			throw new NeuroException("DataVector size of input package is too small to match input size of the network.");
+		}
+		if (output.getMinRowSize() < netFF.Lrs[netFF.lCount - 1].nCount) {
+			throw new NeuroException("Size of output DataVector is too small to match output size of the network.");
+		}
+
+		long iter_count = 0;
+		int data_size = Math.min(input.size(), output.size());
+
+		_prepareBuffers();
+		for (double[] l : last) {
+			Arrays.fill(l, 0.0);
+		}
+
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
+		last_error = max_error + 1.0;
+
+		while ((iter_count < max_iter) && (last_error > max_error)) {
+			last_error = 0.0;
+			for (int first = 0; first < data_size; first += batchSize) {
+				int count = Math.min(batchSize, data_size - first);
+				gradient.compute(in, out, first, count, executor);
+				if (maxErrorMode) {
+					last_error = Math.max(last_error, gradient.getMaxError());
+				} else {
+					last_error += gradient.getError();
+				}
+				_applyGradient(count);
+			}
+			iter_count++;
+		}
+
+		last_iter = iter_count;
+		return last_error;
+	}
+
+	/// Applies the average weight change (sum / count) with momentum and
+	/// clears the sum.
+	private void _applyGradient(int count) {
+		double scale = eta / count;
+		double[][] sum = gradient.getSum();
+		for (int l = 0; l < netFF.lCount; l++) {
+			double[] g = sum[l];
+			double[] change = last[l];
+			double[] weights = netFF.Lrs[l].weights;
+			for (int w = 0; w < g.length; w++) {
+				change[w] = scale * g[w] + M * change[w];
+				weights[w] += change[w];
+			}
+			Arrays.fill(g, 0.0);
+		}
+		netFF.markModified();
+	}
+
+	private void _check() throws NeuroException {
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned.");
+		}
+		if (netFF.lCount <= 0) {
+			throw new NeuroException("Neural Network has no layers.");
+		}
+	}
+
+	/// Creates buffers of all tasks (if the network or parallelism changed).
+	private void _prepareBuffers() {
+		if (gradient != null && gradient.matches(netFF, parallelism))
+			return;
+
+		gradient = new ParallelGradient(netFF, parallelism);
+		last = GradientWorker.newGradient(netFF);
+	}
+
+}
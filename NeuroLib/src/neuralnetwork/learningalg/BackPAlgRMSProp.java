@@ -0,0 +1,53 @@
+package neuralnetwork.learningalg;
+
+/**
+ * Back-propagation with RMSProp updates: the change of a weight is divided by
+ * the root of a moving average of its squares (v). The update of a weight is
+ * eta * change / (sqrt(v) + epsilon).
+ */
+public class BackPAlgRMSProp extends BackPAlgAdaptive {
+
+	public static final double DEFAULT_RMSPROP_ETA = 0.001;
+	public static final double DEFAULT_RHO = 0.9;
+
+	protected double rho;
+
+	// moving averages of squares of weight changes
+	protected double[][] v;
+
+	public BackPAlgRMSProp() {
+		super(DEFAULT_RMSPROP_ETA);
+		rho = DEFAULT_RHO;
+	}
+
+	public BackPAlgRMSProp(BackPAlgRMSProp src) {
+		super(src);
+		rho = src.rho;
+	}
+
+	/**
+	 * @param rho decay rate of the moving average (0.0 - 1.0)
+	 */
+	public void setRho(double rho) {
+		this.rho = rho;
+	}
+
+	@Override
+	protected void _resetState() {
+		v = GradientWorker.newGradient(netFF);
+	}
+
+	@Override
+	protected void _update(int l, double[] g, double scale) {
+		double[] vl = v[l];
+		double[] weights = netFF.Lrs[l].weights;
+		double change;
+
+		for (int w = 0; w < g.length; w++) {
+			change = g[w] * scale;
+			vl[w] = rho * vl[w] + (1.0 - rho) * change * change;
+			weights[w] += eta * change / (Math.sqrt(vl[w]) + epsilon);
+		}
+	}
+
+}
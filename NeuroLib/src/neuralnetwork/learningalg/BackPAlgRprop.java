@@ -0,0 +1,274 @@
+package neuralnetwork.learningalg;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Resilient back-propagation (iRprop+). Weight changes are summed over the
+ * whole data package (in parallel - see setParallelism()) and every weight is
+ * changed once per epoch by its own step. Only the sign of the summed change is
+ * used: the step grows (etaPlus) while the sign stays the same and shrinks
+ * (etaMinus) when it changes. After a change of sign the previous change of
+ * the weight is reverted if the error of the epoch increased (weight
+ * backtracking, may be switched off - iRprop-).
+ *
+ * No learning rate is needed. The error returned by learn() is calculated for
+ * weights before the last update. Steps and signs of weight changes are kept
+ * between calls of learn() - they are reset when the network or its structure
+ * changes, or by reset().
+ */
+public class BackPAlgRprop extends SupervisedLearnAlg {
+
+	public static final double DEFAULT_ETA_PLUS = 1.2;
+	public static final double DEFAULT_ETA_MINUS = 0.5;
+	public static final double DEFAULT_INITIAL_STEP = 0.1;
+	public static final double DEFAULT_MAX_STEP = 50.0;
+	public static final double DEFAULT_MIN_STEP = 1e-6;
+
+	protected double etaPlus;
+	protected double etaMinus;
+	protected double initialStep;
+	protected double maxStep;
+	protected double minStep;
+	protected boolean backtracking;
+	protected int parallelism;
+	protected Executor executor;
+
+	private ParallelGradient gradient;
+	// steps, last summed changes and last applied changes of weights
+	private double[][] step;
+	private double[][] lastGrad;
+	private double[][] lastChange;
+	private double lastEpochError;
+
+	public BackPAlgRprop() {
+		super();
+		etaPlus = DEFAULT_ETA_PLUS;
+		etaMinus = DEFAULT_ETA_MINUS;
+		initialStep = DEFAULT_INITIAL_STEP;
+		maxStep = DEFAULT_MAX_STEP;
+		minStep = DEFAULT_MIN_STEP;
+		backtracking = true;
+		parallelism = Runtime.getRuntime().availableProcessors();
+		executor = ForkJoinPool.commonPool();
+	}
+
+	public BackPAlgRprop(BackPAlgRprop src) {
+		super(src);
+		etaPlus = src.etaPlus;
+		etaMinus = src.etaMinus;
+		initialStep = src.initialStep;
+		maxStep = src.maxStep;
+		minStep = src.minStep;
+		backtracking = src.backtracking;
+		parallelism = src.parallelism;
+		executor = src.executor;
+	}
+
+	/**
+	 * @param plus  factor increasing steps (greater than 1.0)
+	 * @param minus factor decreasing steps (0.0 - 1.0, exclusive)
+	 * @return false if factors are out of range (nothing is changed)
+	 */
+	public boolean setStepFactors(double plus, double minus) {
+		if (!(plus > 1.0) || !(minus > 0.0 && minus < 1.0))
+			return false;
+
+		etaPlus = plus;
+		etaMinus = minus;
+		return true;
+	}
+
+	/**
+	 * Sets limits of steps. The initial step is used after the next reset().
+	 *
+	 * @param initial initial step of every weight
+	 * @param min     minimum step (greater than 0.0)
+	 * @param max     maximum step
+	 * @return false if min <= initial <= max is not met (nothing is changed)
+	 */
+	public boolean setSteps(double initial, double min, double max) {
+		if (!(min > 0.0 && min <= initial && initial <= max))
+			return false;
+
+		initialStep = initial;
+		minStep = min;
+		maxStep = max;
+		return true;
+	}
+
+	/**
+	 * @param on true - iRprop+ (revert changes which increased the error), false
+	 *           - iRprop-
+	 */
+	public void setBacktracking(boolean on) {
+		backtracking = on;
+	}
+
+	/**
+	 * @param tasks number of tasks summing weight changes
+	 */
+	public void setParallelism(int tasks) {
+		if (tasks < 1)
+			return;
+		parallelism = tasks;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param executor executor running the tasks (the common ForkJoinPool by
+	 *                 default)
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void setNeuralNetwork(NNetFF inetwork) {
+		super.setNeuralNetwork(inetwork);
+		gradient = null;
+		step = null;
+	}
+
+	/**
+	 * Restores initial steps and forgets signs of previous weight changes.
+	 */
+	public void reset() {
+		step = null;
+	}
+
+	/**
+	 * Not supported - Rprop needs changes summed over the whole data package.
+	 * Other learnOneStep() variants call this one.
+	 */
+	@Override
+	public void learnOneStep(double[] input, int inOffset, double[] output, int outOffset) throws NeuroException {
+		throw new NeuroException("Rprop learns whole data packages only - use learn().");
+	}
+
+	@Override
+	public double learn(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, false);
+	}
+
+	@Override
+	public double learnForMaxError(DataPackage input, DataPackage output) throws NeuroException {
+		return _learn(input, output, true);
+	}
+
+	private double _learn(DataPackage input, DataPackage output, boolean maxErrorMode) throws NeuroException {
+		if (netFF == null) {
+			throw new NeuroException("Neural Network is not assigned.");
+		}
+		if (netFF.lCount <= 0) {
+			throw new NeuroException("Neural Network has no layers.");
+		}
+		if (input.getMinRowSize() < netFF.inputSize) {
+			throw new NeuroException("DataVector size of input package is too small to match input size of the network.");
+		}
+		if (output.getMinRowSize() < netFF.Lrs[netFF.lCount - 1].nCount) {
+			throw new NeuroException("Size of output DataVector is too small to match output size of the network.");
+		}
+
+		long iter_count = 0;
+		int data_size = Math.min(input.size(), output.size());
+
+		_prepareBuffers();
+
+		double[][] in = input.toArrayOfDoubles();
+		double[][] out = output.toArrayOfDoubles();
+
+		last_error = max_error + 1.0;
+
+		while ((iter_count < max_iter) && (last_error > max_error) && data_size > 0) {
+			gradient.clear();
+			gradient.compute(in, out, 0, data_size, executor);
+
+			double error = gradient.getError();
+			last_error = maxErrorMode ? gradient.getMaxError() : error;
+			if (last_error <= max_error) {
+				break;
+			}
+
+			boolean worse = (error > lastEpochError);
+			for (int l = 0; l < netFF.lCount; l++) {
+				_update(l, gradient.getSum()[l], worse);
+			}
+			lastEpochError = error;
+			netFF.markModified();
+			iter_count++;
+		}
+
+		last_iter = iter_count;
+		return last_error;
+	}
+
+	/// Changes weights of the layer (g - summed changes of the epoch, worse -
+	/// true if the error of the epoch is greater than the previous one).
+	private void _update(int l, double[] g, boolean worse) {
+		double[] weights = netFF.Lrs[l].weights;
+		double[] st = step[l];
+		double[] lg = lastGrad[l];
+		double[] lc = lastChange[l];
+
+		for (int w = 0; w < g.length; w++) {
+			double sign = lg[w] * g[w];
+
+			if (sign > 0.0) {
+				st[w] = Math.min(st[w] * etaPlus, maxStep);
+				lc[w] = Math.signum(g[w]) * st[w];
+				weights[w] += lc[w];
+				lg[w] = g[w];
+			} else if (sign < 0.0) {
+				st[w] = Math.max(st[w] * etaMinus, minStep);
+				if (backtracking && worse) {
+					weights[w] -= lc[w];
+				}
+				lc[w] = 0.0;
+				// no step in the next epoch depends on this sign
+				lg[w] = 0.0;
+			} else {
+				lc[w] = Math.signum(g[w]) * st[w];
+				weights[w] += lc[w];
+				lg[w] = g[w];
+			}
+		}
+	}
+
+	/// Creates buffers and the initial state of the algorithm (if it was reset
+	/// or the structure of the network changed).
+	private void _prepareBuffers() {
+		if (gradient == null || !gradient.matches(netFF, parallelism)) {
+			gradient = new ParallelGradient(netFF, parallelism);
+		}
+		if (step != null && _matches(step))
+			return;
+
+		step = GradientWorker.newGradient(netFF);
+		lastGrad = GradientWorker.newGradient(netFF);
+		lastChange = GradientWorker.newGradient(netFF);
+		for (double[] s : step) {
+			Arrays.fill(s, initialStep);
+		}
+		lastEpochError = Double.MAX_VALUE;
+	}
+
+	private boolean _matches(double[][] buf) {
+		if (buf.length != netFF.lCount)
+			return false;
+		for (int l = 0; l < netFF.lCount; l++) {
+			if (buf[l].length != netFF.Lrs[l].weights.length)
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,178 @@
+package neuralnetwork.learningalg;
+
+import neuralnetwork.actfun.AFunction;
+import neuralnetwork.network.Kernels;
+import neuralnetwork.network.Layer;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Calculates errors of neurons and weight changes for single samples using its
+ * own buffers for intermediate results. Weights of the network are only read,
+ * so many workers (one per thread) can work with one network at the same time.
+ *
+ * Errors are calculated as in BackPAlgBare: the change of a weight is error of
+ * a neuron times input value (not multiplied by eta).
+ */
+final class GradientWorker {
+
+	private final NNetFF net;
+
+	// membrane potentials, outputs and errors of neurons of subsequent layers
+	final double[][] mpot;
+	final double[][] out;
+	final double[][] delta;
+	// derivatives of the activation function for one layer
+	private final double[] deri;
+	// indexes of non-zero input values (used by apply())
+	private final int[] nonZero;
+
+	// maximum absolute error of outputs of the last sample
+	double maxError;
+
+	GradientWorker(NNetFF net) {
+		this.net = net;
+		mpot = new double[net.lCount][];
+		out = new double[net.lCount][];
+		delta = new double[net.lCount][];
+		for (int l = 0; l < net.lCount; l++) {
+			mpot[l] = new double[net.Lrs[l].nCount];
+			out[l] = new double[net.Lrs[l].nCount];
+			delta[l] = new double[net.Lrs[l].nCount];
+		}
+		deri = new double[net.getMaxSize() + 1];
+		nonZero = new int[net.inputSize];
+	}
+
+	/// Checks if buffers still match the structure of the network.
+	boolean fits() {
+		if (mpot.length != net.lCount || nonZero.length != net.inputSize || deri.length < net.getMaxSize() + 1)
+			return false;
+		for (int l = 0; l < net.lCount; l++) {
+			if (mpot[l].length != net.Lrs[l].nCount)
+				return false;
+		}
+		return true;
+	}
+
+	/// Creates flat buffers for weight changes of all layers of the network.
+	static double[][] newGradient(NNetFF net) {
+		double[][] grad = new double[net.lCount][];
+		for (int l = 0; l < net.lCount; l++) {
+			grad[l] = new double[net.Lrs[l].weights.length];
+		}
+		return grad;
+	}
+
+	/// Calculates outputs of all layers for the input vector.
+	void forward(double[] input, int offset) {
+		int last = net.lCount - 1;
+		for (int l = 0; l <= last; l++) {
+			AFunction fun = (l == last) ? net.outActFun : net.actFun;
+			if (l == 0) {
+				net.Lrs[0].evaluate(input, offset, mpot[0], out[0], fun);
+			} else {
+				net.Lrs[l].evaluate(out[l - 1], 0, mpot[l], out[l], fun);
+			}
+		}
+	}
+
+	/// Calculates errors of neurons of all layers for results of the last
+	/// forward() call. Returns the sum of absolute errors of outputs.
+	double backward(double[] output, int offset) {
+		int last = net.lCount - 1;
+		Layer lr = net.Lrs[last];
+		double sum = 0.0;
+		double err;
+
+		maxError = 0.0;
+		_derivatives(net.outActFun, last);
+		for (int n = 0; n < lr.nCount; n++) {
+			err = output[offset + n] - out[last][n];
+			delta[last][n] = deri[n] * err;
+			err = Math.abs(err);
+			sum += err;
+			if (err > maxError)
+				maxError = err;
+		}
+
+		for (int l = last - 1; l >= 0; l--) {
+			lr = net.Lrs[l];
+			Layer next = net.Lrs[l + 1];
+			double[] d = delta[l];
+
+			// weighted sums of errors of the next layer - row by row
+			for (int n = 0; n < lr.nCount; n++) {
+				d[n] = 0.0;
+			}
+			for (int j = 0; j < next.nCount; j++) {
+				Kernels.axpy(delta[l + 1][j], next.weights, j * next.wCount, d, 0, lr.nCount);
+			}
+
+			_derivatives(net.actFun, l);
+			for (int n = 0; n < lr.nCount; n++) {
+				d[n] *= deri[n];
+			}
+		}
+
+		return sum;
+	}
+
+	/// Adds weight changes of the last sample to grad (see newGradient()).
+	void accumulate(double[][] grad, double[] input, int offset) {
+		for (int l = 0; l < net.lCount; l++) {
+			Layer lr = net.Lrs[l];
+			double[] in = (l == 0) ? input : out[l - 1];
+			int off = (l == 0) ? offset : 0;
+			double[] g = grad[l];
+			int inputs = lr.wCount - 1;
+			int row = 0;
+
+			for (int n = 0; n < lr.nCount; n++) {
+				Kernels.axpy(delta[l][n], in, off, g, row, inputs);
+				// bias value (input = 1.0)
+				g[row + inputs] += delta[l][n];
+				row += lr.wCount;
+			}
+		}
+	}
+
+	/// Changes weights of the network by rate times weight changes of the last
+	/// sample. Weights of zero inputs of the first layer are not touched.
+	void apply(double rate, double[] input, int offset) {
+		int inputs = net.inputSize;
+		int count = 0;
+		for (int k = 0; k < inputs; k++) {
+			if (input[offset + k] != 0.0)
+				nonZero[count++] = k;
+		}
+
+		for (int l = 0; l < net.lCount; l++) {
+			Layer lr = net.Lrs[l];
+			int bias = lr.wCount - 1;
+			int row = 0;
+			double change;
+
+			for (int n = 0; n < lr.nCount; n++) {
+				change = rate * delta[l][n];
+				if (l == 0) {
+					for (int k = 0; k < count; k++) {
+						lr.weights[row + nonZero[k]] += change * input[offset + nonZero[k]];
+					}
+				} else {
+					Kernels.axpy(change, out[l - 1], 0, lr.weights, row, bias);
+				}
+				lr.weights[row + bias] += change;
+				row += lr.wCount;
+			}
+		}
+	}
+
+	private void _derivatives(AFunction fun, int l) {
+		if (fun.hasOutputDerivative()) {
+			fun.deriFromOut(out[l], deri, 0, out[l].length);
+		} else {
+			fun.deri(mpot[l], deri, 0, mpot[l].length);
+		}
+	}
+
+}
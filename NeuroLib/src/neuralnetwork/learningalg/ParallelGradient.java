@@ -0,0 +1,131 @@
+package neuralnetwork.learningalg;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Sums weight changes of many samples in parallel. Samples are split into
+ * equal parts processed by separate tasks, each with its own GradientWorker and
+ * gradient buffers. The sums of the tasks are added in a tree of pairs in a
+ * fixed order, so results depend only on data and the number of tasks.
+ */
+final class ParallelGradient {
+
+	private final NNetFF net;
+	private final GradientWorker[] workers;
+	private final double[][][] grads;
+	private final double[] errors;
+	private final double[] maxErrors;
+
+	ParallelGradient(NNetFF net, int tasks) {
+		this.net = net;
+		workers = new GradientWorker[tasks];
+		grads = new double[tasks][][];
+		for (int t = 0; t < tasks; t++) {
+			workers[t] = new GradientWorker(net);
+			grads[t] = GradientWorker.newGradient(net);
+		}
+		errors = new double[tasks];
+		maxErrors = new double[tasks];
+	}
+
+	/// Checks if the buffers match the network and the number of tasks.
+	boolean matches(NNetFF net, int tasks) {
+		if (this.net != net || workers.length != tasks || grads[0].length != net.lCount)
+			return false;
+		for (int l = 0; l < net.lCount; l++) {
+			if (grads[0][l].length != net.Lrs[l].weights.length)
+				return false;
+		}
+		return true;
+	}
+
+	/// Adds weight changes of samples first .. first + count - 1 to the sum
+	/// (see getSum()).
+	void compute(double[][] in, double[][] out, int first, int count, Executor executor) {
+		int tasks = Math.min(workers.length, count);
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+
+		for (int t = 0; t < workers.length; t++) {
+			errors[t] = 0.0;
+			maxErrors[t] = 0.0;
+		}
+
+		for (int t = 0; t < tasks; t++) {
+			int task = t;
+			int from = first + (int) ((long) count * t / tasks);
+			int to = first + (int) ((long) count * (t + 1) / tasks);
+
+			futures[t] = CompletableFuture.runAsync(() -> {
+				GradientWorker worker = workers[task];
+				double[][] grad = grads[task];
+				for (int i = from; i < to; i++) {
+					worker.forward(in[i], 0);
+					errors[task] += worker.backward(out[i], 0);
+					maxErrors[task] = Math.max(maxErrors[task], worker.maxError);
+					worker.accumulate(grad, in[i], 0);
+				}
+			}, executor);
+		}
+		CompletableFuture.allOf(futures).join();
+
+		// tree reduction: pairs (0, 1), (2, 3), ... then (0, 2), (4, 6), ...
+		for (int stride = 1; stride < tasks; stride *= 2) {
+			int step = 2 * stride;
+			int pairs = (tasks - stride + step - 1) / step;
+			CompletableFuture<?>[] sums = new CompletableFuture<?>[pairs];
+			for (int p = 0; p < pairs; p++) {
+				int dst = p * step;
+				int src = dst + stride;
+				sums[p] = CompletableFuture.runAsync(() -> _add(grads[dst], grads[src]), executor);
+			}
+			CompletableFuture.allOf(sums).join();
+		}
+	}
+
+	/// Returns the sum of weight changes (the same layout as Lrs[l].weights).
+	double[][] getSum() {
+		return grads[0];
+	}
+
+	/// Clears the sum of weight changes.
+	void clear() {
+		for (double[] g : grads[0]) {
+			Arrays.fill(g, 0.0);
+		}
+	}
+
+	/// Returns the sum of absolute errors of outputs of the last compute().
+	double getError() {
+		double sum = 0.0;
+		for (double e : errors) {
+			sum += e;
+		}
+		return sum;
+	}
+
+	/// Returns the maximum absolute error of outputs of the last compute().
+	double getMaxError() {
+		double max = 0.0;
+		for (double e : maxErrors) {
+			max = Math.max(max, e);
+		}
+		return max;
+	}
+
+	/// Adds src to dst and clears src.
+	private static void _add(double[][] dst, double[][] src) {
+		for (int l = 0; l < dst.length; l++) {
+			double[] d = dst[l];
+			double[] s = src[l];
+			for (int w = 0; w < d.length; w++) {
+				d[w] += s[w];
+			}
+			Arrays.fill(s, 0.0);
+		}
+	}
+
+}
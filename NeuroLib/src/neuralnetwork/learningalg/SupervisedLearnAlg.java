@@ -4,6 +4,7 @@ import java.util.Vector;
 
 import neuralnetwork.data.DataPackage;
 import neuralnetwork.data.DataVector;
+import neuralnetwork.data.SparseDataVector;
 import neuralnetwork.exceptions.NeuroException;
 import neuralnetwork.network.NNetFF;
 
@@ -64,9 +65,31 @@ public abstract class SupervisedLearnAlg {
 		return last_iter;
 	}
 
-	public void learnOneStep(Vector<Double> buf1, Vector<Double> buf2) throws NeuroException{}
+	/**
+	 * Copies the vectors to arrays and calls learnOneStep(double[], int,
+	 * double[], int).
+	 */
+	public void learnOneStep(Vector<Double> buf1, Vector<Double> buf2) throws NeuroException {
+		learnOneStep(_toArray(buf1), 0, _toArray(buf2), 0);
+	}
+
+	/**
+	 * Copies the vectors to arrays and calls learnOneStep(double[], int,
+	 * double[], int).
+	 */
+	public void learnOneStep(DataVector input, DataVector output) throws NeuroException {
+		learnOneStep(input.toArrayOfDoubles(), 0, output.toArrayOfDoubles(), 0);
+	}
 
-	public void learnOneStep(DataVector input, DataVector output) throws NeuroException {}
+	public void learnOneStep(double[] input, int inOffset, double[] output, int outOffset) throws NeuroException {}
+
+	/**
+	 * Converts the input to a dense array and calls learnOneStep(double[], int,
+	 * double[], int). Algorithms with a sparse learning step override it.
+	 */
+	public void learnOneStep(SparseDataVector input, double[] output, int outOffset) throws NeuroException {
+		learnOneStep(input.toArrayOfDoubles(), 0, output, outOffset);
+	}
 
 	public double learn(DataPackage input, DataPackage output) throws NeuroException {
 		return 1.0;
@@ -75,4 +98,12 @@ public abstract class SupervisedLearnAlg {
 	public double learnForMaxError(DataPackage input, DataPackage output) throws NeuroException {
 		return 1.0;
 	}
+
+	private static double[] _toArray(Vector<Double> buf) {
+		double[] result = new double[buf.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = buf.get(i);
+		}
+		return result;
+	}
 }
@@ -0,0 +1,89 @@
+package neuralnetwork.network;
+
+import java.util.Vector;
+
+import neuralnetwork.data.DataVector;
+
+/**
+ * Per-thread state used to process data with a shared NNetModel. A session
+ * owns only buffers for intermediate results of layers, so it is cheap to
+ * create. A session must not be used by more than one thread at a time.
+ */
+public class InferenceSession implements NNetProcessor {
+
+	private final NNetModel model;
+
+	// outputs of subsequent layers
+	private final double[][] out;
+	// membrane potentials of the currently calculated layer
+	private final double[] mpot;
+	// buffer for the input vector given in a form of Vector<Double>
+	private final double[] inBuf;
+
+	public InferenceSession(NNetModel model) {
+		this.model = model;
+		out = new double[model.getLayerCount()][];
+		for (int l = 0; l < out.length; l++) {
+			out[l] = new double[model.getLayerSize(l)];
+		}
+		mpot = new double[model.getMaxSize()];
+		inBuf = new double[model.getInputSize()];
+	}
+
+	public NNetModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Returns outputs of a layer calculated by the last process() call. The
+	 * array is the buffer of the session - it is overwritten by the next call.
+	 *
+	 * @param layer index of the layer
+	 * @return outputs of the layer
+	 */
+	public double[] getLayerOutput(int layer) {
+		return out[layer];
+	}
+
+	/**
+	 * Processes one input vector.
+	 * 
+	 * @param input     array containing input values
+	 * @param inOffset  index of the first input value
+	 * @param output    destination array for results
+	 * @param outOffset index of the first result value
+	 * @return number of results (size of the last layer)
+	 */
+	@Override
+	public int process(double[] input, int inOffset, double[] output, int outOffset) {
+		if (out.length == 0)
+			return 0;
+
+		model.forward(input, inOffset, mpot, out);
+
+		double[] result = out[out.length - 1];
+		System.arraycopy(result, 0, output, outOffset, result.length);
+		return result.length;
+	}
+
+	public int process(Vector<Double> input, Vector<Double> output) {
+		if (out.length == 0)
+			return 0;
+
+		for (int i = 0; i < inBuf.length; i++) {
+			inBuf[i] = input.get(i);
+		}
+		model.forward(inBuf, 0, mpot, out);
+
+		output.clear();
+		for (double d : out[out.length - 1]) {
+			output.add(d);
+		}
+		return out[out.length - 1].length;
+	}
+
+	public int process(DataVector input, DataVector output) {
+		return process(input.getData(), output.getData());
+	}
+
+}
@@ -0,0 +1,87 @@
+package neuralnetwork.network;
+
+/**
+ * Basic vector operations used by layer evaluation and learning algorithms.
+ * 
+ * By default sums are accumulated strictly from the first to the last element,
+ * which gives the same results as plain loops. In unrolled mode dot products
+ * use four independent partial sums, which breaks the dependency chain of a
+ * single accumulator - additions of subsequent elements can overlap in the
+ * CPU pipeline, at the cost of rounding differences in the last bits (see
+ * KernelsBenchmark in the test folder for the actual gain). The mode can be
+ * switched on with setUnrolled() or with the system property
+ * "neuralnetwork.kernels.unrolled".
+ */
+public final class Kernels {
+
+	private static volatile boolean unrolled = Boolean.getBoolean("neuralnetwork.kernels.unrolled");
+
+	private Kernels() {
+	}
+
+	public static boolean isUnrolled() {
+		return unrolled;
+	}
+
+	public static void setUnrolled(boolean enabled) {
+		unrolled = enabled;
+	}
+
+	/**
+	 * Calculates sum + a[aOffset..] * b[bOffset..] for len elements.
+	 * 
+	 * @param sum     initial value of the sum
+	 * @param a       the first vector
+	 * @param aOffset index of the first element of a
+	 * @param b       the second vector
+	 * @param bOffset index of the first element of b
+	 * @param len     number of elements
+	 * @return the sum
+	 */
+	public static double dot(double sum, double[] a, int aOffset, double[] b, int bOffset, int len) {
+		if (unrolled) {
+			return _dotUnrolled(sum, a, aOffset, b, bOffset, len);
+		}
+
+		for (int i = 0; i < len; i++) {
+			sum += a[aOffset + i] * b[bOffset + i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Calculates y[yOffset..] += alpha * x[xOffset..] for len elements.
+	 * 
+	 * @param alpha   scale factor
+	 * @param x       source vector
+	 * @param xOffset index of the first element of x
+	 * @param y       destination vector
+	 * @param yOffset index of the first element of y
+	 * @param len     number of elements
+	 */
+	public static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int len) {
+		// elements are independent - there is no dependency chain to break and
+		// results are the same in both modes
+		for (int i = 0; i < len; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	private static double _dotUnrolled(double sum, double[] a, int aOffset, double[] b, int bOffset, int len) {
+		double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+		int i = 0;
+
+		for (; i + 3 < len; i += 4) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+			s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+			s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+			s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+		}
+		for (; i < len; i++) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+		}
+
+		return sum + ((s0 + s1) + (s2 + s3));
+	}
+
+}
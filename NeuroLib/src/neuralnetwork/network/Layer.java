@@ -1,23 +1,47 @@
 package neuralnetwork.network;
 
+import neuralnetwork.actfun.AFunction;
 import neuralnetwork.neuron.Neuron;
 
+/**
+ * One layer of a feed-forward network. All weights of the layer are stored in
+ * a single row-major array: the row of neuron n starts at n * wCount and holds
+ * wCount - 1 input weights followed by the bias weight. Membrane potentials and
+ * outputs of the neurons are kept in the mpot and out arrays.
+ */
 public class Layer {
 
-	public Neuron[] neurons;
+	// number of input values processed at once by evaluateBatch()
+	private static final int BLOCK_INPUTS = 128;
+	// number of rows processed at once by evaluateBatch()
+	private static final int BLOCK_ROWS = 16;
+
+	public double[] weights;
+	public double[] mpot;
+	public double[] out;
+
 	public int nCount;
+	public int wCount;
+
+	// network containing the layer, notified about changes of weights (null
+	// for stand-alone layers and copies)
+	NNetFF owner;
 
 	public Layer() {
 		nCount = 0;
+		wCount = 0;
 	}
 
 	public Layer(int nodes) {
 		nCount = 0;
-		neurons = null;
-		if (nodes <= 0)
-			return;
-		neurons = new Neuron[nodes];
-		nCount = nodes;
+		wCount = 0;
+		restructure(nodes);
+	}
+
+	public Layer(int nodes, int weights) {
+		nCount = 0;
+		wCount = 0;
+		restructure(nodes, weights);
 	}
 
 	public Layer(Layer src) {
@@ -25,22 +49,17 @@ public class Layer {
 	}
 
 	public Layer assign(Layer src) {
-		restructure(src.nCount);
-		for(int i=0; i<nCount; i++)
-			neurons[i].assign(src.neurons[i]);
+		nCount = src.nCount;
+		wCount = src.wCount;
+		weights = (src.weights == null) ? null : src.weights.clone();
+		mpot = (src.mpot == null) ? null : src.mpot.clone();
+		out = (src.out == null) ? null : src.out.clone();
+		markModified();
 		return this;
-		
 	}
 
 	public void restructure(int nodes) {
-		if (nodes <= 0){
-			return;
-		}
-		neurons = new Neuron[nodes];
-		for (int i=0; i< nodes; i++){
-			neurons[i] = new Neuron();
-		}
-		nCount = nodes;
+		restructure(nodes, 0);
 	}
 
 	public void restructure(int nodes, int weights) {
@@ -48,13 +67,265 @@ public class Layer {
 			return;
 		if (weights < 0)
 			return;
-		neurons = new Neuron[nodes];
+
+		this.weights = new double[nodes * weights];
+		mpot = new double[nodes];
+		out = new double[nodes];
 		nCount = nodes;
-		
-		for (int i = 0; i < nCount; i++) {
-			neurons[i] = new Neuron();
-			neurons[i].restructure(weights);
+		wCount = weights;
+		markModified();
+	}
+
+	/**
+	 * Notifies the network containing the layer (if any) that weights of the
+	 * layer were changed, so its copies and caches (e.g. NNetCache) are
+	 * invalidated. Setters of Neuron views call it themselves.
+	 */
+	public void markModified() {
+		if (owner != null)
+			owner.markModified();
+	}
+
+	/**
+	 * Returns a view of the specified neuron. The view reads and writes the
+	 * storage of this layer directly.
+	 *
+	 * @param n index of a neuron
+	 * @return neuron view
+	 */
+	public Neuron getNeuron(int n) {
+		return new Neuron(this, n);
+	}
+
+	/**
+	 * Returns views of all neurons (see getNeuron()), created on every call.
+	 *
+	 * @return neuron views
+	 * @deprecated replaces the former field "neurons" - use getNeuron() or the
+	 *             flat arrays weights, mpot and out
+	 */
+	@Deprecated
+	public Neuron[] getNeurons() {
+		Neuron[] neurons = new Neuron[nCount];
+		for (int n = 0; n < nCount; n++) {
+			neurons[n] = new Neuron(this, n);
+		}
+		return neurons;
+	}
+
+	/**
+	 * Calculates membrane potentials and outputs of all neurons of the layer and
+	 * stores them in the layer's own buffers.
+	 *
+	 * @param input  array containing input values of the layer
+	 * @param offset index of the first input value
+	 * @param fun    activation function
+	 */
+	public void evaluate(double[] input, int offset, AFunction fun) {
+		evaluate(input, offset, mpot, out, fun);
+	}
+
+	/**
+	 * Calculates membrane potentials and outputs of all neurons of the layer for
+	 * a sparse input vector and stores them in the layer's own buffers. Only
+	 * weights of non-zero inputs are read.
+	 *
+	 * @param index indexes of non-zero inputs
+	 * @param value values of non-zero inputs
+	 * @param count number of non-zero inputs
+	 * @param fun   activation function
+	 */
+	public void evaluateSparse(int[] index, double[] value, int count, AFunction fun) {
+		int inputs = wCount - 1;
+		int row = 0;
+		double result;
+
+		for (int n = 0; n < nCount; n++) {
+			// bias value (the last weight)
+			result = weights[row + inputs];
+			for (int k = 0; k < count; k++) {
+				result += weights[row + index[k]] * value[k];
+			}
+			mpot[n] = result;
+			row += wCount;
 		}
+
+		fun.calc(mpot, out, 0, nCount);
+	}
+
+	/**
+	 * Updates membrane potentials stored in the layer after a change of some
+	 * input values and calculates outputs again. Only weights of the changed
+	 * inputs are read.
+	 *
+	 * @param index indexes of changed inputs
+	 * @param delta differences between new and old values of the inputs
+	 * @param count number of changed inputs
+	 * @param fun   activation function
+	 */
+	public void evaluateDelta(int[] index, double[] delta, int count, AFunction fun) {
+		int row = 0;
+		double result;
+
+		for (int n = 0; n < nCount; n++) {
+			result = mpot[n];
+			for (int k = 0; k < count; k++) {
+				result += weights[row + index[k]] * delta[k];
+			}
+			mpot[n] = result;
+			row += wCount;
+		}
+
+		fun.calc(mpot, out, 0, nCount);
+	}
+
+	/**
+	 * Calculates membrane potentials and outputs of all neurons of the layer and
+	 * stores them in the given buffers. Weights of the layer are only read.
+	 *
+	 * @param input     array containing input values of the layer
+	 * @param offset    index of the first input value
+	 * @param mpotBuf   destination of membrane potentials (at least nCount long)
+	 * @param outBuf    destination of outputs (at least nCount long)
+	 * @param fun       activation function
+	 */
+	public void evaluate(double[] input, int offset, double[] mpotBuf, double[] outBuf, AFunction fun) {
+		int inputs = wCount - 1;
+		int row = 0;
+		double result;
+
+		for (int n = 0; n < nCount; n++) {
+			// bias value (the last weight) plus the rest of weights
+			result = Kernels.dot(weights[row + inputs], weights, row, input, offset, inputs);
+			mpotBuf[n] = result;
+			row += wCount;
+		}
+
+		// activation function for the whole layer at once
+		fun.calc(mpotBuf, outBuf, 0, nCount);
+	}
+
+	/**
+	 * Calculates outputs of the layer for many input vectors at once. Inputs and
+	 * outputs are matrices stored row by row: an input row has wCount - 1 values
+	 * and an output row has nCount values. The weighted sums are computed as a
+	 * matrix product split into blocks of rows and inputs, so the used parts of
+	 * the weights and inputs stay in cache. Every sum is accumulated in the same
+	 * order as in evaluate(), therefore the results are identical (unless
+	 * unrolled Kernels are used by evaluate()).
+	 *
+	 * @param input     input matrix
+	 * @param inOffset  index of the first input value
+	 * @param rows      number of input vectors
+	 * @param output    output matrix
+	 * @param outOffset index of the first output value
+	 * @param fun       activation function
+	 */
+	public void evaluateBatch(double[] input, int inOffset, int rows, double[] output, int outOffset,
+			AFunction fun) {
+		int inputs = wCount - 1;
+		int r, n, k, r0, k0, rEnd, kEnd;
+		int in0, in1, in2, in3, out0, w0, w1;
+		double s00, s01, s10, s11, s20, s21, s30, s31;
+		double x0, x1, x2, x3, a, b;
+
+		// start from bias values (the last weight)
+		for (r = 0; r < rows; r++) {
+			out0 = outOffset + r * nCount;
+			for (n = 0; n < nCount; n++) {
+				output[out0 + n] = weights[n * wCount + inputs];
+			}
+		}
+
+		for (k0 = 0; k0 < inputs; k0 += BLOCK_INPUTS) {
+			kEnd = Math.min(k0 + BLOCK_INPUTS, inputs);
+
+			for (r0 = 0; r0 < rows; r0 += BLOCK_ROWS) {
+				rEnd = Math.min(r0 + BLOCK_ROWS, rows);
+
+				// pairs of neurons
+				for (n = 0; n + 1 < nCount; n += 2) {
+					w0 = n * wCount;
+					w1 = w0 + wCount;
+
+					// four rows and two neurons at once
+					for (r = r0; r + 3 < rEnd; r += 4) {
+						in0 = inOffset + r * inputs;
+						in1 = in0 + inputs;
+						in2 = in1 + inputs;
+						in3 = in2 + inputs;
+						out0 = outOffset + r * nCount + n;
+
+						s00 = output[out0];
+						s01 = output[out0 + 1];
+						s10 = output[out0 + nCount];
+						s11 = output[out0 + nCount + 1];
+						s20 = output[out0 + 2 * nCount];
+						s21 = output[out0 + 2 * nCount + 1];
+						s30 = output[out0 + 3 * nCount];
+						s31 = output[out0 + 3 * nCount + 1];
+
+						for (k = k0; k < kEnd; k++) {
+							a = weights[w0 + k];
+							b = weights[w1 + k];
+							x0 = input[in0 + k];
+							x1 = input[in1 + k];
+							x2 = input[in2 + k];
+							x3 = input[in3 + k];
+							s00 += a * x0;
+							s01 += b * x0;
+							s10 += a * x1;
+							s11 += b * x1;
+							s20 += a * x2;
+							s21 += b * x2;
+							s30 += a * x3;
+							s31 += b * x3;
+						}
+
+						output[out0] = s00;
+						output[out0 + 1] = s01;
+						output[out0 + nCount] = s10;
+						output[out0 + nCount + 1] = s11;
+						output[out0 + 2 * nCount] = s20;
+						output[out0 + 2 * nCount + 1] = s21;
+						output[out0 + 3 * nCount] = s30;
+						output[out0 + 3 * nCount + 1] = s31;
+					}
+
+					// remaining rows
+					for (; r < rEnd; r++) {
+						in0 = inOffset + r * inputs;
+						out0 = outOffset + r * nCount + n;
+						s00 = output[out0];
+						s01 = output[out0 + 1];
+						for (k = k0; k < kEnd; k++) {
+							x0 = input[in0 + k];
+							s00 += weights[w0 + k] * x0;
+							s01 += weights[w1 + k] * x0;
+						}
+						output[out0] = s00;
+						output[out0 + 1] = s01;
+					}
+				}
+
+				// the last neuron if the number of neurons is odd
+				if (n < nCount) {
+					w0 = n * wCount;
+					for (r = r0; r < rEnd; r++) {
+						in0 = inOffset + r * inputs;
+						out0 = outOffset + r * nCount + n;
+						s00 = output[out0];
+						for (k = k0; k < kEnd; k++) {
+							s00 += weights[w0 + k] * input[in0 + k];
+						}
+						output[out0] = s00;
+					}
+				}
+			}
+		}
+
+		// activation function
+		fun.calc(output, output, outOffset, rows * nCount);
 	}
 
 }
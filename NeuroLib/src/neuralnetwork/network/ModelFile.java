@@ -0,0 +1,271 @@
+package neuralnetwork.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import neuralnetwork.actfun.AFLin;
+import neuralnetwork.actfun.AFSigm;
+import neuralnetwork.actfun.AFunction;
+
+/**
+ * Binary file format of feed-forward networks. All values are little-endian.
+ *
+ * <pre>
+ * int    magic number "NNFF"
+ * int    format version
+ * int    number of layers (L)
+ * int    input size
+ * 2 x    activation function (hidden layers, the last layer):
+ *        int type (1 - sigmoid, 2 - linear), double Beta,
+ *        double maximum error of sigmoid fast mode (0.0 - exact)
+ * L x    int number of neurons, int number of weights per neuron
+ *        padding to a multiple of 8 bytes
+ * L x    double[] weights of a layer (row by row, as in Layer.weights)
+ * </pre>
+ *
+ * Weights are stored as contiguous arrays, so they are loaded without parsing
+ * - load() copies them into a new NNetFF, map() uses them in place from the
+ * memory-mapped file.
+ */
+public final class ModelFile {
+
+	public static final int MAGIC = 0x4646_4E4E; // "NNFF" in little-endian
+	public static final int VERSION = 1;
+
+	private static final int TYPE_SIGM = 1;
+	private static final int TYPE_LIN = 2;
+
+	// size of the header without layer sizes
+	private static final int HEADER_SIZE = 16 + 2 * 20;
+	// number of weights written at once
+	private static final int WRITE_CHUNK = 8192;
+
+	private ModelFile() {
+	}
+
+	/**
+	 * Saves structure, activation functions and weights of the network. The
+	 * model is written to a temporary file in the same directory which then
+	 * replaces the target file, so an existing file is not damaged if saving
+	 * fails.
+	 *
+	 * @param net  network to save
+	 * @param file file name (a whole path if needed)
+	 * @throws IOException on write error or if an activation function is neither
+	 *                     AFSigm nor AFLin
+	 */
+	public static void save(NNetFF net, String file) throws IOException {
+		// the header is prepared first - it fails for unsupported functions
+		ByteBuffer header = ByteBuffer.allocate(_weightsOffset(net.lCount)).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(net.lCount);
+		header.putInt(net.inputSize);
+		_putFunction(header, net.actFun);
+		_putFunction(header, net.outActFun);
+		for (int l = 0; l < net.lCount; l++) {
+			header.putInt(net.Lrs[l].nCount);
+			header.putInt(net.Lrs[l].wCount);
+		}
+		// the rest of the buffer is padding
+		header.rewind();
+
+		Path target = Paths.get(file).toAbsolutePath();
+		Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				_write(ch, header);
+
+				ByteBuffer chunk = ByteBuffer.allocate(8 * WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+				DoubleBuffer view = chunk.asDoubleBuffer();
+				for (int l = 0; l < net.lCount; l++) {
+					int n = net.Lrs[l].nCount * net.Lrs[l].wCount;
+					for (int w = 0; w < n; w += WRITE_CHUNK) {
+						int count = Math.min(WRITE_CHUNK, n - w);
+						view.clear();
+						view.put(net.Lrs[l].weights, w, count);
+						chunk.clear().limit(8 * count);
+						_write(ch, chunk);
+					}
+				}
+				ch.force(true);
+			}
+			_replace(temp, target);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Loads a network from the file into a new NNetFF object. Weights are copied
+	 * from the memory-mapped file in bulk.
+	 *
+	 * @param file file name (a whole path if needed)
+	 * @return loaded network
+	 * @throws IOException on read error or if the file format is not valid
+	 */
+	public static NNetFF load(String file) throws IOException {
+		ByteBuffer buf = _map(file);
+		int lCount = _checkHeader(buf);
+
+		int[] sizes = new int[lCount];
+		for (int l = 0; l < lCount; l++) {
+			sizes[l] = buf.getInt(HEADER_SIZE + 8 * l);
+		}
+
+		NNetFF net = new NNetFF();
+		if (!net.setStructure(buf.getInt(12), sizes))
+			throw new IOException("Model file is damaged.");
+		net.setActFun(_getFunction(buf, 16));
+		net.setOutActFun(_getFunction(buf, 36));
+
+		DoubleBuffer[] weights = _weights(buf, lCount);
+		for (int l = 0; l < lCount; l++) {
+			if (weights[l].remaining() != net.Lrs[l].weights.length)
+				throw new IOException("Inconsistent layer sizes in model file: " + file);
+			weights[l].get(net.Lrs[l].weights);
+		}
+
+		return net;
+	}
+
+	/**
+	 * Maps the file into memory and creates an inference model using weights in
+	 * place (they are not copied nor parsed). The file must not be modified
+	 * while the model is in use.
+	 *
+	 * @param file file name (a whole path if needed)
+	 * @return model reading weights from the mapped file
+	 * @throws IOException on read error or if the file format is not valid
+	 */
+	public static NNetModel map(String file) throws IOException {
+		ByteBuffer buf = _map(file);
+		int lCount = _checkHeader(buf);
+
+		int inputSize = buf.getInt(12);
+		int[] nCount = new int[lCount];
+		int[] wCount = new int[lCount];
+		for (int l = 0; l < lCount; l++) {
+			nCount[l] = buf.getInt(HEADER_SIZE + 8 * l);
+			wCount[l] = buf.getInt(HEADER_SIZE + 8 * l + 4);
+		}
+
+		// sizes are used by NNetModel without further checks
+		if (lCount == 0 || inputSize <= 0)
+			throw new IOException("Model file is damaged.");
+		for (int l = 0; l < lCount; l++) {
+			int inputs = (l == 0) ? inputSize : nCount[l - 1];
+			if (nCount[l] <= 0 || wCount[l] != inputs + 1)
+				throw new IOException("Inconsistent layer sizes in model file: " + file);
+		}
+
+		return new NNetModel(inputSize, nCount, wCount, _weights(buf, lCount), _getFunction(buf, 16),
+				_getFunction(buf, 36));
+	}
+
+	private static void _write(FileChannel ch, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+	}
+
+	/// Replaces the target with the temporary file (atomically if possible).
+	private static void _replace(Path temp, Path target) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static ByteBuffer _map(String file) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			return buf;
+		}
+	}
+
+	/// Checks the header and returns the number of layers.
+	private static int _checkHeader(ByteBuffer buf) throws IOException {
+		if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC)
+			throw new IOException("Not a model file.");
+		if (buf.getInt(4) != VERSION)
+			throw new IOException("Unsupported model file version: " + buf.getInt(4));
+
+		int lCount = buf.getInt(8);
+		if (lCount < 0 || lCount > (buf.limit() - HEADER_SIZE) / 8 || buf.limit() < _weightsOffset(lCount))
+			throw new IOException("Model file is damaged.");
+		return lCount;
+	}
+
+	/// Creates views of weights of subsequent layers.
+	private static DoubleBuffer[] _weights(ByteBuffer buf, int lCount) throws IOException {
+		DoubleBuffer[] weights = new DoubleBuffer[lCount];
+		long position = _weightsOffset(lCount);
+
+		for (int l = 0; l < lCount; l++) {
+			long size = 8L * buf.getInt(HEADER_SIZE + 8 * l) * buf.getInt(HEADER_SIZE + 8 * l + 4);
+			if (size < 0 || position + size > buf.limit())
+				throw new IOException("Model file is damaged.");
+
+			ByteBuffer layer = buf.duplicate();
+			layer.position((int) position);
+			layer.limit((int) (position + size));
+			// slice() resets byte order - it must be set again
+			weights[l] = layer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			position += size;
+		}
+		return weights;
+	}
+
+	private static int _weightsOffset(int lCount) {
+		int offset = HEADER_SIZE + 8 * lCount;
+		return (offset + 7) & ~7;
+	}
+
+	private static void _putFunction(ByteBuffer buf, AFunction fun) throws IOException {
+		if (fun instanceof AFSigm) {
+			AFSigm sigm = (AFSigm) fun;
+			buf.putInt(TYPE_SIGM);
+			buf.putDouble(sigm.getBeta());
+			buf.putDouble(sigm.getFastModeError());
+		} else if (fun instanceof AFLin) {
+			buf.putInt(TYPE_LIN);
+			buf.putDouble(((AFLin) fun).getBeta());
+			buf.putDouble(0.0);
+		} else {
+			throw new IOException("Activation function cannot be saved: " + fun.getClass().getName());
+		}
+	}
+
+	private static AFunction _getFunction(ByteBuffer buf, int offset) throws IOException {
+		int type = buf.getInt(offset);
+		double beta = buf.getDouble(offset + 4);
+		double fastError = buf.getDouble(offset + 12);
+
+		if (type == TYPE_SIGM) {
+			AFSigm sigm = new AFSigm(beta);
+			if (fastError > 0.0)
+				sigm.setFastMode(fastError);
+			return sigm;
+		}
+		if (type == TYPE_LIN) {
+			return new AFLin(beta);
+		}
+		throw new IOException("Unknown activation function type: " + type);
+	}
+
+}
@@ -0,0 +1,237 @@
+package neuralnetwork.network;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizing cache of results of a network. Results are stored under a key made
+ * of the input vector - either exact bits of input values or values rounded to
+ * a multiple of a quantization step (similar inputs share one result).
+ *
+ * The cache is split into stripes, each with its own lock and LRU eviction, so
+ * many threads can use one cache at the same time. Missing results are
+ * calculated with an NNetModel copy of the network (one InferenceSession per
+ * thread), so the network itself is not used by the cache threads.
+ *
+ * The cache is cleared automatically when the network is changed (see
+ * NNetFF.getModificationCount()). The network must not be changed while
+ * another thread uses the cache.
+ */
+public class NNetCache implements NNetProcessor {
+
+	public static final int DEFAULT_STRIPES = 16;
+
+	// estimated memory taken by one entry apart from its arrays
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final NNetFF net;
+	private final Stripe[] stripes;
+	private final long maxBytes;
+	private final double step;
+
+	private int entriesPerStripe;
+
+	private volatile int version;
+	private volatile NNetModel model;
+	private final ThreadLocal<InferenceSession> sessions = new ThreadLocal<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/// Key made of input values.
+	private static final class Key {
+		final long[] values;
+		final int hash;
+
+		Key(long[] values) {
+			this.values = values;
+			int h = Arrays.hashCode(values);
+			hash = h ^ (h >>> 16);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof Key) && Arrays.equals(values, ((Key) obj).values);
+		}
+	}
+
+	/// One part of the cache with its own lock and LRU order.
+	private final class Stripe extends LinkedHashMap<Key, double[]> {
+		private static final long serialVersionUID = 1L;
+
+		Stripe() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+			return size() > entriesPerStripe;
+		}
+	}
+
+	/**
+	 * Creates a cache using exact input values as keys.
+	 *
+	 * @param net      network calculating results
+	 * @param maxBytes estimated maximum memory taken by cached entries
+	 */
+	public NNetCache(NNetFF net, long maxBytes) {
+		this(net, maxBytes, 0.0, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param net      network calculating results
+	 * @param maxBytes estimated maximum memory taken by cached entries
+	 * @param step     quantization step of input values in keys (0.0 - exact
+	 *                 values)
+	 * @param stripes  number of independently locked parts of the cache
+	 */
+	public NNetCache(NNetFF net, long maxBytes, double step, int stripes) {
+		this.net = net;
+		this.maxBytes = maxBytes;
+		this.step = step;
+		this.stripes = new Stripe[Math.max(1, stripes)];
+		for (int s = 0; s < this.stripes.length; s++) {
+			this.stripes[s] = new Stripe();
+		}
+		_rebuild();
+	}
+
+	/**
+	 * Returns the result for the input vector - from the cache if possible.
+	 *
+	 * @param input     array containing input values
+	 * @param inOffset  index of the first input value
+	 * @param output    destination array for results
+	 * @param outOffset index of the first result value
+	 * @return number of results (size of the last layer)
+	 */
+	@Override
+	public int process(double[] input, int inOffset, double[] output, int outOffset) {
+		if (version != net.getModificationCount()) {
+			_rebuild();
+		}
+		NNetModel m = model;
+		if (m.getLayerCount() == 0)
+			return 0;
+
+		Key key = _key(input, inOffset, m.getInputSize());
+		Stripe stripe = stripes[(key.hash & 0x7FFFFFFF) % stripes.length];
+		double[] result;
+
+		synchronized (stripe) {
+			result = stripe.get(key);
+		}
+
+		if (result != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			result = new double[m.getOutputSize()];
+			_session(m).process(input, inOffset, result, 0);
+			synchronized (stripe) {
+				// skip results of a model replaced in the meantime
+				if (m == model)
+					stripe.put(key, result);
+			}
+		}
+
+		System.arraycopy(result, 0, output, outOffset, result.length);
+		return result.length;
+	}
+
+	/**
+	 * Removes all cached results (counters are not reset).
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return number of cached results
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return fraction of results returned from the cache
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return (total > 0) ? (double) h / total : 0.0;
+	}
+
+	public void resetCounters() {
+		hits.reset();
+		misses.reset();
+	}
+
+	/// Copies the network and clears the cache.
+	private synchronized void _rebuild() {
+		int current = net.getModificationCount();
+		if (model != null && version == current)
+			return;
+
+		NNetModel m = new NNetModel(net);
+		long entryBytes = ENTRY_OVERHEAD + 8L * (m.getInputSize() + m.getOutputSize());
+		entriesPerStripe = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / entryBytes / stripes.length));
+
+		model = m;
+		version = current;
+		clear();
+	}
+
+	/// Returns a session of the current thread for the given model.
+	private InferenceSession _session(NNetModel m) {
+		InferenceSession session = sessions.get();
+		if (session == null || session.getModel() != m) {
+			session = m.newSession();
+			sessions.set(session);
+		}
+		return session;
+	}
+
+	private Key _key(double[] input, int offset, int size) {
+		long[] values = new long[size];
+		if (step > 0.0) {
+			for (int i = 0; i < size; i++) {
+				values[i] = Math.round(input[offset + i] / step);
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				values[i] = Double.doubleToLongBits(input[offset + i]);
+			}
+		}
+		return new Key(values);
+	}
+
+}
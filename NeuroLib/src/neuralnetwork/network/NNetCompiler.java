@@ -0,0 +1,296 @@
+package neuralnetwork.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import neuralnetwork.actfun.AFLin;
+import neuralnetwork.actfun.AFSigm;
+import neuralnetwork.actfun.AFunction;
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.data.DataVector;
+import neuralnetwork.exceptions.NeuroException;
+
+/**
+ * Generates a class specialized for one trained network. Layer sizes are
+ * constants of the generated code, loops of small layers are unrolled and
+ * sigmoid or linear activation functions are calculated inline. The class is
+ * compiled at runtime (requires a JDK) and defined in this package with
+ * MethodHandles.Lookup.defineClass().
+ *
+ * The generated processor keeps its own copy of weights and buffers of
+ * intermediate results allocated once per thread (ThreadLocal), so it can be
+ * used by many threads at once without allocating on every call. Sums are
+ * accumulated in the same order as in NNetFF (with default Kernels), so
+ * results are bitwise equal - use verify() to check it. Generated classes are
+ * never unloaded, so compile a network once and reuse the processor.
+ */
+public final class NNetCompiler {
+
+	// maximum number of inputs of a neuron calculated without a loop
+	public static final int UNROLL_INPUTS = 16;
+	// maximum number of neurons of a layer calculated without a loop
+	public static final int UNROLL_NEURONS = 32;
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private NNetCompiler() {
+	}
+
+	/**
+	 * Generates and compiles a processor specialized for the network. The
+	 * current weights are copied - later changes of the network do not affect
+	 * the processor.
+	 *
+	 * @param net trained network
+	 * @return specialized processor
+	 * @throws NeuroException if the network has no layers or the class cannot be
+	 *                        compiled (for instance when running without a JDK)
+	 */
+	public static NNetProcessor compile(NNetFF net) throws NeuroException {
+		if (net.lCount <= 0) {
+			throw new NeuroException("Neural Network has no layers.");
+		}
+
+		String name = "NNetCompiled" + counter.incrementAndGet();
+		String source = generateSource(net, name);
+		byte[] bytes = _compile(name, source);
+
+		double[][] weights = new double[net.lCount][];
+		for (int l = 0; l < net.lCount; l++) {
+			weights[l] = net.Lrs[l].weights.clone();
+		}
+		AFunction[] functions = new AFunction[net.lCount];
+		for (int l = 0; l < net.lCount; l++) {
+			functions[l] = (l == net.lCount - 1) ? net.outActFun : net.actFun;
+		}
+
+		try {
+			Class<?> cls = MethodHandles.lookup().defineClass(bytes);
+			return (NNetProcessor) cls.getDeclaredConstructor(double[][].class, AFunction[].class)
+					.newInstance(weights, functions);
+		} catch (ReflectiveOperationException | IllegalAccessError e) {
+			throw new NeuroException("Cannot define compiled network class: " + e);
+		}
+	}
+
+	/**
+	 * Compares results of the processor with results of the network.
+	 *
+	 * @param compiled processor created by compile()
+	 * @param net      source network
+	 * @param input    input vectors
+	 * @return true if all results are bitwise equal
+	 */
+	public static boolean verify(NNetProcessor compiled, NNetFF net, DataPackage input) {
+		int size = net.Lrs[net.lCount - 1].nCount;
+		double[] expected = new double[size];
+		double[] result = new double[size];
+
+		for (DataVector row : input.getList()) {
+			double[] in = row.toArrayOfDoubles();
+			net.process(in, 0, expected, 0);
+			compiled.process(in, 0, result, 0);
+			for (int n = 0; n < size; n++) {
+				if (Double.doubleToRawLongBits(expected[n]) != Double.doubleToRawLongBits(result[n]))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Generates Java source of a processor specialized for the network.
+	 *
+	 * @param net  source network
+	 * @param name simple name of the class (the package is neuralnetwork.network)
+	 * @return source code
+	 */
+	public static String generateSource(NNetFF net, String name) {
+		StringBuilder src = new StringBuilder();
+		int last = net.lCount - 1;
+
+		src.append("package neuralnetwork.network;\n\n");
+		src.append("import neuralnetwork.actfun.AFunction;\n\n");
+		src.append("final class ").append(name).append(" implements NNetProcessor {\n\n");
+
+		for (int l = 0; l <= last; l++) {
+			src.append("\tprivate final double[] w").append(l).append(";\n");
+			src.append("\tprivate final AFunction f").append(l).append(";\n");
+		}
+		if (last > 0) {
+			// outputs of hidden layers of the calling thread
+			src.append("\tprivate final ThreadLocal<double[][]> buffers = new ThreadLocal<>();\n");
+		}
+
+		src.append("\n\t").append(name).append("(double[][] w, AFunction[] f) {\n");
+		for (int l = 0; l <= last; l++) {
+			src.append("\t\tw").append(l).append(" = w[").append(l).append("];\n");
+			src.append("\t\tf").append(l).append(" = f[").append(l).append("];\n");
+		}
+		src.append("\t}\n\n");
+
+		src.append("\t@Override\n");
+		src.append("\tpublic int process(double[] in, int inOff, double[] out, int outOff) {\n");
+		if (last > 0) {
+			src.append("\t\tdouble[][] b = buffers.get();\n");
+			src.append("\t\tif (b == null) {\n");
+			src.append("\t\t\tb = new double[][] {");
+			for (int l = 0; l < last; l++) {
+				src.append((l == 0) ? " " : ", ").append("new double[").append(net.Lrs[l].nCount).append("]");
+			}
+			src.append(" };\n");
+			src.append("\t\t\tbuffers.set(b);\n");
+			src.append("\t\t}\n");
+		}
+		for (int l = 0; l < last; l++) {
+			src.append("\t\tdouble[] o").append(l).append(" = b[").append(l).append("];\n");
+		}
+		for (int l = 0; l <= last; l++) {
+			String input = (l == 0) ? "in, inOff" : "o" + (l - 1) + ", 0";
+			String output = (l == last) ? "out, outOff" : "o" + l + ", 0";
+			src.append("\t\tlayer").append(l).append("(w").append(l).append(", f").append(l).append(", ")
+					.append(input).append(", ").append(output).append(");\n");
+		}
+		src.append("\t\treturn ").append(net.Lrs[last].nCount).append(";\n");
+		src.append("\t}\n");
+
+		for (int l = 0; l <= last; l++) {
+			AFunction fun = (l == last) ? net.outActFun : net.actFun;
+			_generateLayer(src, l, net.Lrs[l].nCount, net.Lrs[l].wCount, fun);
+		}
+
+		src.append("}\n");
+		return src.toString();
+	}
+
+	/// Generates a static method calculating one layer.
+	private static void _generateLayer(StringBuilder src, int l, int nCount, int wCount, AFunction fun) {
+		int inputs = wCount - 1;
+
+		src.append("\n\tprivate static void layer").append(l);
+		src.append("(double[] w, AFunction f, double[] in, int inOff, double[] out, int outOff) {\n");
+		src.append("\t\tdouble s;\n");
+
+		if (nCount <= UNROLL_NEURONS && inputs <= UNROLL_INPUTS) {
+			// fully unrolled layer
+			for (int n = 0; n < nCount; n++) {
+				int row = n * wCount;
+				src.append("\t\ts = w[").append(row + inputs).append("];\n");
+				for (int k = 0; k < inputs; k++) {
+					src.append("\t\ts += w[").append(row + k).append("] * in[inOff + ").append(k).append("];\n");
+				}
+				src.append("\t\tout[outOff + ").append(n).append("] = ").append(_activation(fun)).append(";\n");
+			}
+		} else {
+			src.append("\t\tfor (int n = 0, r = 0; n < ").append(nCount).append("; n++, r += ").append(wCount)
+					.append(") {\n");
+			src.append("\t\t\ts = w[r + ").append(inputs).append("];\n");
+			if (inputs <= UNROLL_INPUTS) {
+				for (int k = 0; k < inputs; k++) {
+					src.append("\t\t\ts += w[r + ").append(k).append("] * in[inOff + ").append(k).append("];\n");
+				}
+			} else {
+				src.append("\t\t\tfor (int k = 0; k < ").append(inputs).append("; k++) {\n");
+				src.append("\t\t\t\ts += w[r + k] * in[inOff + k];\n");
+				src.append("\t\t\t}\n");
+			}
+			src.append("\t\t\tout[outOff + n] = ").append(_activation(fun)).append(";\n");
+			src.append("\t\t}\n");
+		}
+
+		src.append("\t}\n");
+	}
+
+	/// Returns an expression calculating the activation function of "s".
+	/// The expressions are the same as in AFSigm and AFLin.
+	private static String _activation(AFunction fun) {
+		if (fun.getClass() == AFSigm.class && !((AFSigm) fun).isFastMode()) {
+			return "(1.0 / (1.0 + Math.exp(" + Double.toHexString(-((AFSigm) fun).getBeta()) + " * s)))";
+		}
+		if (fun.getClass() == AFLin.class) {
+			return Double.toHexString(((AFLin) fun).getBeta()) + " * s";
+		}
+		return "f.calc(s)";
+	}
+
+	/// Compiles the source in memory and returns the class file.
+	private static byte[] _compile(String name, String source) throws NeuroException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new NeuroException("Java compiler is not available (a JDK is required).");
+		}
+
+		JavaFileObject file = new SimpleJavaFileObject(
+				URI.create("string:///neuralnetwork/network/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		String classPath = System.getProperty("java.class.path");
+		CodeSource code = NNetProcessor.class.getProtectionDomain().getCodeSource();
+		if (code != null) {
+			try {
+				File location = new File(code.getLocation().toURI());
+				classPath = location.getPath() + File.pathSeparator + classPath;
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				// not a local file - use the class path of the application only
+			}
+		}
+		List<String> options = Arrays.asList("-classpath", classPath, "-g:none");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		Boolean ok;
+		try (StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null);
+				JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+					@Override
+					public JavaFileObject getJavaFileForOutput(Location location, String className,
+							JavaFileObject.Kind kind, FileObject sibling) {
+						return new SimpleJavaFileObject(URI.create("bytes:///" + className + kind.extension), kind) {
+							@Override
+							public OutputStream openOutputStream() {
+								return bytes;
+							}
+						};
+					}
+				}) {
+			ok = compiler.getTask(null, manager, diagnostics, options, null, Arrays.asList(file)).call();
+		} catch (IOException e) {
+			throw new NeuroException("Compilation of network class failed: " + e.getMessage());
+		}
+
+		if (ok == null || !ok) {
+			StringBuilder msg = new StringBuilder("Compilation of network class failed.");
+			for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+				if (d.getKind() == Diagnostic.Kind.ERROR) {
+					msg.append("\nline ").append(d.getLineNumber()).append(": ").append(d.getMessage(null));
+				}
+			}
+			throw new NeuroException(msg.toString());
+		}
+		return bytes.toByteArray();
+	}
+
+}
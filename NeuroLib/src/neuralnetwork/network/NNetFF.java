@@ -1,14 +1,38 @@
 package neuralnetwork.network;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import neuralnetwork.actfun.AFSigm;
 import neuralnetwork.actfun.AFunction;
 import neuralnetwork.data.DataPackage;
 import neuralnetwork.data.DataVector;
-
-public class NNetFF {
+import neuralnetwork.data.SparseDataVector;
+
+public class NNetFF implements NNetProcessor {
+
+	// number of rows passed through the network at once by processBatch()
+	private static final int BATCH_ROWS = 64;
+	// minimum number of rows processed by one task of parallel processAll()
+	public static final int PARALLEL_MIN_ROWS = 256;
+	// number of incremental updates between full calculations of the first layer
+	public static final int DEFAULT_FULL_UPDATE_INTERVAL = 1000;
+
+	// weight initialization schemes (see initializeWeights(int, long))
+	public static final int INIT_UNIFORM = 0;
+	public static final int INIT_XAVIER = 1;
+	public static final int INIT_HE = 2;
+	// number of neurons initialized with one random stream
+	private static final int INIT_BLOCK_ROWS = 64;
+	// minimum number of weights initialized in parallel
+	private static final int PARALLEL_MIN_WEIGHTS = 1 << 16;
 
 	public int lCount;
 	public int inputSize;
@@ -22,6 +46,25 @@ public class NNetFF {
 
 	public Layer Lrs[];
 
+	// buffer for the input vector given in a form of Vector<Double>
+	private double[] inBuf;
+
+	// incremented on every change of structure or weights (see markModified())
+	private int modCount;
+
+	// state of incremental calculation (see setInputIncremental()):
+	// input vector for which potentials of the first layer are calculated
+	private double[] lastInput;
+	private boolean lastInputValid;
+	// false if the last input contains NaN or infinite values
+	private boolean lastInputFinite;
+	private int lastInputVersion;
+	private int incrementalUpdates;
+	private int fullUpdateInterval = DEFAULT_FULL_UPDATE_INTERVAL;
+	// indexes and differences of changed input values
+	private int[] deltaIndex;
+	private double[] deltaValue;
+
 	public NNetFF() {
 		lCount = 0;
 		inputSize = 0;
@@ -31,6 +74,23 @@ public class NNetFF {
 
 		actFun = new AFSigm();
 		outActFun = new AFSigm();
+		inBuf = new double[0];
+	}
+
+	/**
+	 * Creates a network with the given structure (see setStructure()). Weights
+	 * are set to zero.
+	 * 
+	 * @param inputSize  size of the input vector
+	 * @param layerSizes numbers of neurons of subsequent layers
+	 * @throws IllegalArgumentException if no layer sizes are given or the input
+	 *                                  size or a layer size is not positive
+	 */
+	public NNetFF(int inputSize, int... layerSizes) {
+		this();
+		if (!setStructure(inputSize, layerSizes))
+			throw new IllegalArgumentException("Invalid network structure: input size " + inputSize
+					+ ", layer sizes " + Arrays.toString(layerSizes));
 	}
 
 	public NNetFF(NNetFF src) {
@@ -56,12 +116,14 @@ public class NNetFF {
 		lCount = src.lCount;
 		inputSize = src.inputSize;
 		maxSize = src.maxSize;
+		inBuf = new double[inputSize];
 		Lrs = new Layer[lCount];
 
 		for (int i = 0; i < lCount; i++) {
-			Lrs[i] = new Layer();
-			Lrs[i].assign(src.Lrs[i]);
+			Lrs[i] = new Layer(src.Lrs[i]);
+			Lrs[i].owner = this;
 		}
+		modCount++;
 
 		return this;
 	}
@@ -69,12 +131,14 @@ public class NNetFF {
 	public void setActFun(AFunction funct) {
 		externalActFun = true;
 		actFun = funct;
+		modCount++;
 
 	}
 
 	public void setOutActFun(AFunction funct) {
 		externalOutActFun = true;
 		outActFun = funct;
+		modCount++;
 
 	}
 
@@ -82,19 +146,59 @@ public class NNetFF {
 		Lrs = new Layer[numLayers];
 		for (int i = 0; i < numLayers; i++) {
 			Lrs[i] = new Layer();
+			Lrs[i].owner = this;
 		}
 		lCount = numLayers;
+		modCount++;
 	}
 
 	public void setInputSize(int size) {
 		if (lCount > 0) {
-			for (int i = 0; i < Lrs[0].nCount; i++) {
-				Lrs[0].neurons[i].restructure(size + 1);
-			}
+			Lrs[0].restructure(Lrs[0].nCount, size + 1);
 		}
 		inputSize = size;
+		inBuf = new double[size];
 		if (inputSize > maxSize)
 			maxSize = inputSize;
+		modCount++;
+	}
+
+	/**
+	 * Sets the whole structure of the network at once. Sizes are validated first
+	 * and weights of every layer are allocated only once (unlike a sequence of
+	 * setNetworkSize(), setInputSize() and setLayerSize() calls). Weights are set
+	 * to zero.
+	 * 
+	 * @param inputSize  size of the input vector
+	 * @param layerSizes numbers of neurons of subsequent layers
+	 * @return false if there are no layers or any size is not positive (the
+	 *         network is not changed)
+	 */
+	public boolean setStructure(int inputSize, int[] layerSizes) {
+		if (inputSize <= 0 || layerSizes == null || layerSizes.length == 0)
+			return false;
+		for (int size : layerSizes) {
+			if (size <= 0)
+				return false;
+		}
+
+		int max = inputSize;
+		Layer[] layers = new Layer[layerSizes.length];
+		for (int l = 0; l < layerSizes.length; l++) {
+			int inputs = (l == 0) ? inputSize : layerSizes[l - 1];
+			layers[l] = new Layer(layerSizes[l], inputs + 1);
+			layers[l].owner = this;
+			if (layerSizes[l] > max)
+				max = layerSizes[l];
+		}
+
+		Lrs = layers;
+		lCount = layers.length;
+		this.inputSize = inputSize;
+		maxSize = max;
+		inBuf = new double[inputSize];
+		modCount++;
+		return true;
 	}
 
 	public boolean setLayerSize(int layer_number, int numNodes) {
@@ -109,8 +213,6 @@ public class NNetFF {
 			return false;
 		}
 
-		Lrs[layer].restructure(numNodes);
-
 		if (numNodes > maxSize) {
 			maxSize = numNodes;
 		}
@@ -125,19 +227,14 @@ public class NNetFF {
 			nWeights = Lrs[layer - 1].nCount + 1;
 		}
 
-		for (int i = 0; i < lCount; i++) {
-			for (int j = 0; j < numNodes; j++) {
-				Lrs[layer].neurons[j].restructure(nWeights);
-
-			}
-		}
+		Lrs[layer].restructure(numNodes, nWeights);
 
 		// jesli istnieje warstwa nastepna to trzeba zmienic ilosc wag jej
 		// neuronow na wartosc rowna ilosci elementow zmienianej warstwy + bias
 		if (layer + 1 < lCount) {
-			for (int i = 0; i < Lrs[layer + 1].nCount; i++)
-				Lrs[layer + 1].neurons[i].restructure(numNodes + 1);
+			Lrs[layer + 1].restructure(Lrs[layer + 1].nCount, numNodes + 1);
 		}
+		modCount++;
 		return true;
 	}
 
@@ -149,12 +246,31 @@ public class NNetFF {
 		return maxSize;
 	}
 
+	/**
+	 * Notifies the network that its weights were changed. Methods of the network,
+	 * setters of its layers and neurons (Layer.markModified(), Neuron.setWeight()
+	 * ...) and learning algorithms call it themselves - it must be called only by
+	 * code writing to the arrays Lrs[].weights directly.
+	 */
+	public void markModified() {
+		modCount++;
+	}
+
+	/**
+	 * @return counter incremented on every change of structure, activation
+	 *         functions or weights (used to invalidate copies and caches, e.g.
+	 *         NNetCache)
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+
 	public void initializeWeights() {
 		initializeWeights(-1.0, 1.0);
 	}
 
 	public void initializeWeights(double min, double max) {
-		int l, n, w; // layers, nodes,weights
+		int l, w; // layers, weights
 
 		Random r = new Random();
 
@@ -164,16 +280,108 @@ public class NNetFF {
 
 		for (l = 0; l < lCount; l++) {
 
-			for (n = 0; n < Lrs[l].nCount; n++) {
+			double[] weights = Lrs[l].weights;
 
-				for (w = 0; w < Lrs[l].neurons[n].wCount; w++) {
+			for (w = 0; w < Lrs[l].nCount * Lrs[l].wCount; w++) {
 
-					Lrs[l].neurons[n].Weights[w] = min + r.nextDouble() * range;
+				weights[w] = min + r.nextDouble() * range;
 
-				}
 			}
 		}
+		modCount++;
+
+	}
+
+	/**
+	 * Sets random weights from [min, max] range. Results depend only on the seed.
+	 * 
+	 * @param min  minimum value
+	 * @param max  maximum value
+	 * @param seed seed of the random generator
+	 */
+	public void initializeWeights(double min, double max, long seed) {
+		_initializeWeights(INIT_UNIFORM, min, max, seed);
+	}
+
+	/**
+	 * Sets random weights using one of initialization schemes:
+	 * <ul>
+	 * <li>INIT_UNIFORM - all weights (including bias) from [-1, 1] range,</li>
+	 * <li>INIT_XAVIER - Xavier/Glorot: weights from [-a, a], a = sqrt(6 / (fanIn
+	 * + fanOut)), suitable for sigmoid and linear layers,</li>
+	 * <li>INIT_HE - He: weights from [-a, a], a = sqrt(6 / fanIn).</li>
+	 * </ul>
+	 * fanIn is the number of inputs of a neuron and fanOut the number of neurons
+	 * of the layer; bias weights are set to zero in Xavier and He schemes.
+	 * 
+	 * Every layer gets its own random stream split from the seed and every block
+	 * of neurons its own stream split from the layer's one, so large networks are
+	 * initialized in parallel and results depend only on the seed.
+	 * 
+	 * @param scheme initialization scheme
+	 * @param seed   seed of the random generator
+	 * @return false if the scheme is not known
+	 */
+	public boolean initializeWeights(int scheme, long seed) {
+		if (scheme != INIT_UNIFORM && scheme != INIT_XAVIER && scheme != INIT_HE)
+			return false;
+
+		_initializeWeights(scheme, -1.0, 1.0, seed);
+		return true;
+	}
+
+	private void _initializeWeights(int scheme, double min, double max, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		List<Runnable> tasks = new ArrayList<>();
+		long total = 0;
+
+		for (int l = 0; l < lCount; l++) {
+			Layer lr = Lrs[l];
+			SplittableRandom layerRandom = random.split();
+			int fanIn = lr.wCount - 1;
+			double lo = min;
+			double hi = max;
+			if (scheme == INIT_XAVIER) {
+				hi = Math.sqrt(6.0 / (fanIn + lr.nCount));
+				lo = -hi;
+			} else if (scheme == INIT_HE) {
+				hi = Math.sqrt(6.0 / Math.max(fanIn, 1));
+				lo = -hi;
+			}
+			boolean zeroBias = (scheme != INIT_UNIFORM);
+
+			for (int first = 0; first < lr.nCount; first += INIT_BLOCK_ROWS) {
+				SplittableRandom r = layerRandom.split();
+				int from = first;
+				int to = Math.min(first + INIT_BLOCK_ROWS, lr.nCount);
+				double a = lo;
+				double b = hi;
+				tasks.add(() -> _initializeRows(lr, from, to, r, a, b, zeroBias));
+			}
+			total += (long) lr.nCount * lr.wCount;
+		}
 
+		if (total >= PARALLEL_MIN_WEIGHTS) {
+			tasks.parallelStream().forEach(Runnable::run);
+		} else {
+			tasks.forEach(Runnable::run);
+		}
+		modCount++;
+	}
+
+	/// Sets random weights of neurons first .. last - 1 of the layer.
+	private static void _initializeRows(Layer lr, int first, int last, SplittableRandom r, double min,
+			double max, boolean zeroBias) {
+		double range = Math.abs(max - min);
+		int inputs = lr.wCount - 1;
+
+		for (int n = first; n < last; n++) {
+			int row = n * lr.wCount;
+			for (int w = 0; w < inputs; w++) {
+				lr.weights[row + w] = min + r.nextDouble() * range;
+			}
+			lr.weights[row + inputs] = zeroBias ? 0.0 : min + r.nextDouble() * range;
+		}
 	}
 
 	public int setInput(DataVector input) {
@@ -182,54 +390,201 @@ public class NNetFF {
 
 	public int setInput(Vector<Double> input) {
 
-		int l, n, w;
+		if (lCount <= 0)
+			return 0;
 
-		double result;
+		// copy input values once, so the weighted sums work on a flat array
+		for (int i = 0; i < inputSize; i++) {
+			inBuf[i] = input.get(i);
+		}
+
+		return setInput(inBuf, 0);
+	}
+
+	/**
+	 * Calculates outputs of all layers for the input vector stored in an array.
+	 * 
+	 * @param input  array containing input values
+	 * @param offset index of the first input value in the array
+	 * @return number of neurons in the first layer
+	 */
+	public int setInput(double[] input, int offset) {
+
+		if (lCount <= 0)
+			return 0;
+
+		lastInputValid = false;
 
 		// the first layer
-		for (n = 0; n < Lrs[0].nCount; n++) {
+		Lrs[0].evaluate(input, offset, (lCount == 1) ? outActFun : actFun);
 
-			result = Lrs[0].neurons[n].Weights[Lrs[0].neurons[n].wCount - 1];
+		_evaluateNextLayers();
 
-			for (w = 0; w < Lrs[0].neurons[n].wCount - 1; w++) {
-				result += Lrs[0].neurons[n].Weights[w] * input.get(w);
-			}
-			Lrs[0].neurons[n].mpot = result;
-			Lrs[0].neurons[n].out = actFun.calc(result);
-		}
+		return Lrs[0].nCount;
+	}
 
-		// the rest of layers - except the last one
-		for (l = 1; l < lCount - 1; l++) {
+	/**
+	 * Calculates outputs of all layers for a sparse input vector. Only weights of
+	 * non-zero inputs of the first layer are read.
+	 * 
+	 * @param input input vector (its size must be equal to inputSize)
+	 * @return number of neurons in the first layer or 0 if the size of the input
+	 *         is not valid
+	 */
+	public int setInput(SparseDataVector input) {
+
+		if (lCount <= 0 || input.size() != inputSize)
+			return 0;
+
+		lastInputValid = false;
+
+		// the first layer
+		Lrs[0].evaluateSparse(input.getIndexes(), input.getValues(), input.getCount(),
+				(lCount == 1) ? outActFun : actFun);
+
+		_evaluateNextLayers();
+
+		return Lrs[0].nCount;
+	}
+
+	/**
+	 * Calculates outputs of all layers for an input vector which differs from
+	 * the previous one (given to this method) only in some values. Membrane
+	 * potentials of the first layer are updated with changes of those values
+	 * only, the rest of layers is calculated as usual. The first layer is
+	 * calculated from scratch on the first call, after changes of the network or
+	 * a call of setInput(), when more than half of input values changed, when
+	 * the previous or a changed value is NaN or infinite (a difference of such
+	 * values would spoil the potentials until the next full calculation) and
+	 * every setFullUpdateInterval() calls (to limit accumulation of rounding
+	 * errors).
+	 * 
+	 * @param input  array containing input values
+	 * @param offset index of the first input value in the array
+	 * @return number of neurons in the first layer
+	 */
+	public int setInputIncremental(double[] input, int offset) {
+
+		if (lCount <= 0)
+			return 0;
+
+		AFunction fun = (lCount == 1) ? outActFun : actFun;
 
-			for (n = 0; n < Lrs[l].nCount; n++) {
-				result = Lrs[l].neurons[n].Weights[Lrs[l].neurons[n].wCount - 1];
+		if (lastInput == null || lastInput.length != inputSize) {
+			lastInput = new double[inputSize];
+			deltaIndex = new int[inputSize];
+			deltaValue = new double[inputSize];
+			lastInputValid = false;
+		}
 
-				// bias value (the last weight)
-				for (w = 0; w < Lrs[l].neurons[n].wCount - 1; w++) {
-					result += Lrs[l].neurons[n].Weights[w] * Lrs[l - 1].neurons[w].out;
+		int count = 0;
+		if (lastInputValid && lastInputFinite && lastInputVersion == modCount
+				&& incrementalUpdates < fullUpdateInterval) {
+			for (int i = 0; i < inputSize && count <= inputSize / 2; i++) {
+				if (input[offset + i] != lastInput[i]) {
+					deltaIndex[count] = i;
+					deltaValue[count] = input[offset + i] - lastInput[i];
+					count++;
+					// also catches NaN and infinite new values
+					if (!Double.isFinite(deltaValue[count - 1]))
+						count = inputSize;
 				}
+			}
+			if (count <= inputSize / 2) {
+				if (count == 0)
+					return Lrs[0].nCount;
 
-				Lrs[l].neurons[n].mpot = result;
-				Lrs[l].neurons[n].out = actFun.calc(result);
+				Lrs[0].evaluateDelta(deltaIndex, deltaValue, count, fun);
+				for (int k = 0; k < count; k++) {
+					lastInput[deltaIndex[k]] = input[offset + deltaIndex[k]];
+				}
+				incrementalUpdates++;
+				_evaluateNextLayers();
+				return Lrs[0].nCount;
 			}
 		}
 
-		// the last layer
-		if (l < lCount) {
-			for (n = 0; n < Lrs[l].nCount; n++) {
-				result = Lrs[l].neurons[n].Weights[Lrs[l].neurons[n].wCount - 1];
-				for (w = 0; w < Lrs[l].neurons[n].wCount - 1; w++) {
-					// the rest of weights
-					result += Lrs[l].neurons[n].Weights[w] * Lrs[l - 1].neurons[w].out;
-				}
-				Lrs[l].neurons[n].mpot = result;
-				Lrs[l].neurons[n].out = outActFun.calc(result);
+		// full calculation of the first layer
+		Lrs[0].evaluate(input, offset, fun);
+		System.arraycopy(input, offset, lastInput, 0, inputSize);
+		lastInputValid = true;
+		lastInputFinite = true;
+		for (int i = 0; i < inputSize; i++) {
+			if (!Double.isFinite(lastInput[i])) {
+				lastInputFinite = false;
+				break;
 			}
 		}
+		lastInputVersion = modCount;
+		incrementalUpdates = 0;
+
+		_evaluateNextLayers();
 
 		return Lrs[0].nCount;
 	}
 
+	/**
+	 * Sets the number of calls of setInputIncremental() after which the first
+	 * layer is calculated from scratch.
+	 * 
+	 * @param interval number of incremental updates (at least 1)
+	 */
+	public void setFullUpdateInterval(int interval) {
+		if (interval < 1)
+			return;
+		fullUpdateInterval = interval;
+	}
+
+	public int getFullUpdateInterval() {
+		return fullUpdateInterval;
+	}
+
+	/// Calculates outputs of all layers except the first one.
+	private void _evaluateNextLayers() {
+
+		// the rest of layers - except the last one
+		for (int l = 1; l < lCount - 1; l++) {
+			Lrs[l].evaluate(Lrs[l - 1].out, 0, actFun);
+		}
+
+		// the last layer
+		if (lCount > 1) {
+			Lrs[lCount - 1].evaluate(Lrs[lCount - 2].out, 0, outActFun);
+		}
+	}
+
+	/**
+	 * Calculates outputs of all layers for the input vector stored in an array.
+	 * 
+	 * @param input  array containing input values
+	 * @param offset index of the first input value in the array
+	 * @param length number of input values (must not be less than inputSize)
+	 * @return number of neurons in the first layer or 0 if the input is too short
+	 */
+	public int setInput(double[] input, int offset, int length) {
+		if (length < inputSize)
+			return 0;
+
+		return setInput(input, offset);
+	}
+
+	/**
+	 * Copies results of the last layer into the given array.
+	 * 
+	 * @param output destination array
+	 * @param offset index of the first result value in the array
+	 * @return number of results (size of the last layer)
+	 */
+	public int getResult(double[] output, int offset) {
+
+		if (lCount <= 0)
+			return 0;
+
+		Layer last = Lrs[lCount - 1];
+		System.arraycopy(last.out, 0, output, offset, last.nCount);
+		return last.nCount;
+	}
+
 	public int getResult(Vector<Double> output) {
 
 		if (lCount <= 0)
@@ -238,7 +593,7 @@ public class NNetFF {
 		output.clear();
 
 		for (int n = 0; n < Lrs[lCount - 1].nCount; n++) {
-			output.add(Lrs[lCount - 1].neurons[n].out);
+			output.add(Lrs[lCount - 1].out[n]);
 		}
 
 		return Lrs[lCount - 1].nCount;
@@ -257,11 +612,40 @@ public class NNetFF {
 	}
 
 	public int process(DataVector input, DataVector output) {
+		return process(input.getData(), output.getData());
+	}
+
+	/**
+	 * Processes one input vector stored in an array.
+	 * 
+	 * @param input     array containing input values
+	 * @param inOffset  index of the first input value
+	 * @param output    destination array for results
+	 * @param outOffset index of the first result value
+	 * @return number of results (size of the last layer)
+	 */
+	@Override
+	public int process(double[] input, int inOffset, double[] output, int outOffset) {
 		if (lCount <= 0)
 			return 0;
 
-		setInput(input.getData());
-		return getResult(output);
+		setInput(input, inOffset);
+		return getResult(output, outOffset);
+	}
+
+	/**
+	 * Processes one sparse input vector.
+	 * 
+	 * @param input     input vector
+	 * @param output    destination array for results
+	 * @param outOffset index of the first result value
+	 * @return number of results (size of the last layer)
+	 */
+	public int process(SparseDataVector input, double[] output, int outOffset) {
+		if (setInput(input) == 0)
+			return 0;
+
+		return getResult(output, outOffset);
 	}
 
 	public void processAll(DataPackage input, DataPackage output) {
@@ -270,8 +654,7 @@ public class NNetFF {
 
 		output.clear();
 
-		for (int i=0; i < input.size(); i++) {
-			DataVector row = input.get(i);
+		for (DataVector row : input.getList()) {
 			setInput(row.getData());
 			DataVector result = new DataVector();
 			getResult(result);
@@ -279,4 +662,137 @@ public class NNetFF {
 		}
 	}
 
+	/**
+	 * Processes all input vectors using up to given number of tasks run in the
+	 * common ForkJoinPool. See processAll(DataPackage, DataPackage, Executor,
+	 * int).
+	 * 
+	 * @param input       input vectors
+	 * @param output      results (previous content is cleared)
+	 * @param parallelism maximum number of tasks processed at the same time
+	 */
+	public void processAll(DataPackage input, DataPackage output, int parallelism) {
+		processAll(input, output, ForkJoinPool.commonPool(), parallelism);
+	}
+
+	/**
+	 * Processes all input vectors in parallel. The rows are split into equal
+	 * chunks processed by separate tasks on the given executor - each task uses
+	 * its own InferenceSession with a shared copy of weights. Results are added
+	 * to the output package in the order of input rows. Small packages (less than
+	 * PARALLEL_MIN_ROWS rows per task) are processed sequentially. Unlike the
+	 * sequential version, the method does not change intermediate results stored
+	 * in layers.
+	 * 
+	 * @param input       input vectors
+	 * @param output      results (previous content is cleared)
+	 * @param executor    executor running the tasks
+	 * @param parallelism maximum number of tasks
+	 */
+	public void processAll(DataPackage input, DataPackage output, Executor executor, int parallelism) {
+		if (lCount <= 0)
+			return;
+
+		DataVector[] rows = input.getList().toArray(new DataVector[0]);
+
+		int tasks = Math.min(parallelism, rows.length / PARALLEL_MIN_ROWS);
+		if (tasks <= 1) {
+			processAll(input, output);
+			return;
+		}
+
+		NNetModel model = new NNetModel(this);
+		double[][] results = new double[rows.length][];
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+
+		for (int t = 0; t < tasks; t++) {
+			int first = (int) ((long) rows.length * t / tasks);
+			int last = (int) ((long) rows.length * (t + 1) / tasks);
+
+			futures[t] = CompletableFuture.runAsync(() -> {
+				InferenceSession session = model.newSession();
+				double[] in = new double[inputSize];
+				for (int i = first; i < last; i++) {
+					Vector<Double> row = rows[i].getData();
+					for (int j = 0; j < inputSize; j++) {
+						in[j] = row.get(j);
+					}
+					results[i] = new double[model.getOutputSize()];
+					session.process(in, 0, results[i], 0);
+				}
+			}, executor);
+		}
+
+		CompletableFuture.allOf(futures).join();
+
+		output.clear();
+		for (double[] result : results) {
+			output.add(new DataVector(result));
+		}
+	}
+
+	/**
+	 * Processes many input vectors at once. Each layer is calculated as a matrix
+	 * product for a block of rows, which is much faster than calling process()
+	 * for every row. Intermediate results are not stored in the layers.
+	 * 
+	 * @param input  input vectors stored row by row (rows * inputSize values)
+	 * @param rows   number of input vectors
+	 * @param output destination for results stored row by row (rows * size of
+	 *               the last layer values)
+	 * @return number of processed rows
+	 */
+	public int processBatch(double[] input, int rows, double[] output) {
+		return processBatch(input, 0, rows, output, 0);
+	}
+
+	/**
+	 * Processes many input vectors at once (see processBatch(double[], int,
+	 * double[])).
+	 * 
+	 * @param input     input vectors stored row by row
+	 * @param inOffset  index of the first input value
+	 * @param rows      number of input vectors
+	 * @param output    destination for results stored row by row
+	 * @param outOffset index of the first output value
+	 * @return number of processed rows
+	 */
+	public int processBatch(double[] input, int inOffset, int rows, double[] output, int outOffset) {
+		if (lCount <= 0 || rows <= 0)
+			return 0;
+
+		int outSize = Lrs[lCount - 1].nCount;
+		int block = Math.min(rows, BATCH_ROWS);
+		double[] src = new double[block * maxSize];
+		double[] dst = new double[block * maxSize];
+		double[] tmp;
+
+		for (int r = 0; r < rows; r += block) {
+			int count = Math.min(block, rows - r);
+			int in = inOffset + r * inputSize;
+			int out = outOffset + r * outSize;
+
+			if (lCount == 1) {
+				Lrs[0].evaluateBatch(input, in, count, output, out, outActFun);
+				continue;
+			}
+
+			// the first layer
+			Lrs[0].evaluateBatch(input, in, count, src, 0, actFun);
+
+			// the rest of layers - except the last one
+			for (int l = 1; l < lCount - 1; l++) {
+				Lrs[l].evaluateBatch(src, 0, count, dst, 0, actFun);
+				tmp = src;
+				src = dst;
+				dst = tmp;
+			}
+
+			// the last layer
+			Lrs[lCount - 1].evaluateBatch(src, 0, count, output, out, outActFun);
+		}
+
+		return rows;
+	}
+
 }
@@ -0,0 +1,223 @@
+package neuralnetwork.network;
+
+import neuralnetwork.actfun.AFunction;
+
+/**
+ * Feed-forward network storing weights and intermediate results in single
+ * precision. It has the same structure as NNetFF (weights of layer l are stored
+ * row by row in weights[l], the bias weight is the last one in a row) but moves
+ * half as many bytes, which matters for networks limited by memory bandwidth.
+ *
+ * The network is created from NNetFF and its weights can be copied back with
+ * copyWeightsTo() or toNNetFF().
+ */
+public class NNetFloat implements NNetProcessor {
+
+	public int lCount;
+	public int inputSize;
+	private int maxSize;
+
+	public int[] nCount;
+	public int[] wCount;
+
+	public float[][] weights;
+	public float[][] mpot;
+	public float[][] out;
+
+	public AFunction actFun;
+	public AFunction outActFun;
+
+	// buffer for the input vector given in double precision
+	private float[] inBuf;
+
+	public NNetFloat(NNetFF src) {
+		assign(src);
+	}
+
+	/**
+	 * Copies structure, activation functions and weights (rounded to single
+	 * precision) of the source network.
+	 *
+	 * @param src source network
+	 * @return this object
+	 */
+	public NNetFloat assign(NNetFF src) {
+		lCount = src.lCount;
+		inputSize = src.inputSize;
+		maxSize = src.getMaxSize();
+		actFun = src.actFun;
+		outActFun = src.outActFun;
+
+		nCount = new int[lCount];
+		wCount = new int[lCount];
+		weights = new float[lCount][];
+		mpot = new float[lCount][];
+		out = new float[lCount][];
+
+		for (int l = 0; l < lCount; l++) {
+			Layer lr = src.Lrs[l];
+			nCount[l] = lr.nCount;
+			wCount[l] = lr.wCount;
+			weights[l] = new float[lr.nCount * lr.wCount];
+			for (int w = 0; w < weights[l].length; w++) {
+				weights[l][w] = (float) lr.weights[w];
+			}
+			mpot[l] = new float[lr.nCount];
+			out[l] = new float[lr.nCount];
+		}
+
+		inBuf = new float[inputSize];
+		return this;
+	}
+
+	/**
+	 * Copies weights into the destination network which must have the same
+	 * structure.
+	 *
+	 * @param dst destination network
+	 * @return false if structures of networks differ (nothing is copied)
+	 */
+	public boolean copyWeightsTo(NNetFF dst) {
+		if (dst.lCount != lCount)
+			return false;
+		for (int l = 0; l < lCount; l++) {
+			if (dst.Lrs[l].nCount != nCount[l] || dst.Lrs[l].wCount != wCount[l])
+				return false;
+		}
+
+		for (int l = 0; l < lCount; l++) {
+			double[] dw = dst.Lrs[l].weights;
+			for (int w = 0; w < weights[l].length; w++) {
+				dw[w] = weights[l][w];
+			}
+		}
+		dst.markModified();
+		return true;
+	}
+
+	/**
+	 * @return a new double precision network with the same structure and weights
+	 */
+	public NNetFF toNNetFF() {
+		NNetFF net = new NNetFF();
+		net.setNetworkSize(lCount);
+		net.setInputSize(inputSize);
+		for (int l = 0; l < lCount; l++) {
+			net.setLayerSize(l + 1, nCount[l]);
+		}
+		net.setActFun(actFun);
+		net.setOutActFun(outActFun);
+		copyWeightsTo(net);
+		return net;
+	}
+
+	public int getLayerCount() {
+		return lCount;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getOutputSize() {
+		return (lCount > 0) ? nCount[lCount - 1] : 0;
+	}
+
+	/**
+	 * Calculates outputs of all layers for the input vector stored in an array.
+	 *
+	 * @param input  array containing input values
+	 * @param offset index of the first input value in the array
+	 * @return number of neurons in the first layer
+	 */
+	public int setInput(float[] input, int offset) {
+
+		if (lCount <= 0)
+			return 0;
+
+		for (int l = 0; l < lCount; l++) {
+			AFunction fun = (l == lCount - 1) ? outActFun : actFun;
+			if (l == 0) {
+				_evaluate(0, input, offset, fun);
+			} else {
+				_evaluate(l, out[l - 1], 0, fun);
+			}
+		}
+
+		return nCount[0];
+	}
+
+	/**
+	 * Converts the input vector to single precision and calculates outputs of
+	 * all layers.
+	 *
+	 * @param input  array containing input values
+	 * @param offset index of the first input value in the array
+	 * @return number of neurons in the first layer
+	 */
+	public int setInput(double[] input, int offset) {
+		for (int i = 0; i < inputSize; i++) {
+			inBuf[i] = (float) input[offset + i];
+		}
+		return setInput(inBuf, 0);
+	}
+
+	public int getResult(float[] output, int offset) {
+		if (lCount <= 0)
+			return 0;
+
+		System.arraycopy(out[lCount - 1], 0, output, offset, nCount[lCount - 1]);
+		return nCount[lCount - 1];
+	}
+
+	public int getResult(double[] output, int offset) {
+		if (lCount <= 0)
+			return 0;
+
+		float[] result = out[lCount - 1];
+		for (int n = 0; n < result.length; n++) {
+			output[offset + n] = result[n];
+		}
+		return result.length;
+	}
+
+	public int process(float[] input, int inOffset, float[] output, int outOffset) {
+		if (lCount <= 0)
+			return 0;
+
+		setInput(input, inOffset);
+		return getResult(output, outOffset);
+	}
+
+	@Override
+	public int process(double[] input, int inOffset, double[] output, int outOffset) {
+		if (lCount <= 0)
+			return 0;
+
+		setInput(input, inOffset);
+		return getResult(output, outOffset);
+	}
+
+	/// Calculates membrane potentials and outputs of one layer.
+	private void _evaluate(int l, float[] input, int offset, AFunction fun) {
+		float[] w = weights[l];
+		float[] potentials = mpot[l];
+		int inputs = wCount[l] - 1;
+		int row = 0;
+		float result;
+
+		for (int n = 0; n < nCount[l]; n++) {
+			// bias value (the last weight)
+			result = w[row + inputs];
+			// the rest of weights
+			for (int k = 0; k < inputs; k++) {
+				result += w[row + k] * input[offset + k];
+			}
+			potentials[n] = result;
+			row += wCount[l];
+		}
+
+		fun.calc(potentials, out[l], 0, nCount[l]);
+	}
+
+}
@@ -0,0 +1,152 @@
+package neuralnetwork.network;
+
+import java.nio.DoubleBuffer;
+
+import neuralnetwork.actfun.AFunction;
+
+/**
+ * Immutable copy of a trained feed-forward network prepared for inference. The
+ * model stores only weights - intermediate results are kept by
+ * InferenceSession objects, so many threads can use one model at the same time
+ * (each thread with its own session) without locks or copies of the weights.
+ *
+ * Weights are either copied from NNetFF or used in place from a memory-mapped
+ * model file (see ModelFile.map()).
+ *
+ * Activation functions are shared with the source network and must not be
+ * changed while the model is in use.
+ */
+public final class NNetModel {
+
+	// weights copied from a network (null for a mapped model)
+	private final Layer[] layers;
+	// weights of subsequent layers in a mapped file (null for a copied model)
+	private final DoubleBuffer[] mapped;
+
+	private final int[] nCount;
+	private final int[] wCount;
+	private final int inputSize;
+	private final int maxSize;
+
+	private final AFunction actFun;
+	private final AFunction outActFun;
+
+	/**
+	 * Creates a model containing a copy of the current weights of the network.
+	 * Later changes of the network do not affect the model.
+	 *
+	 * @param net source network
+	 */
+	public NNetModel(NNetFF net) {
+		layers = new Layer[net.lCount];
+		mapped = null;
+		nCount = new int[net.lCount];
+		wCount = new int[net.lCount];
+		int max = net.inputSize;
+		for (int i = 0; i < net.lCount; i++) {
+			layers[i] = new Layer(net.Lrs[i]);
+			nCount[i] = layers[i].nCount;
+			wCount[i] = layers[i].wCount;
+			if (nCount[i] > max)
+				max = nCount[i];
+		}
+		inputSize = net.inputSize;
+		maxSize = max;
+		actFun = net.actFun;
+		outActFun = net.outActFun;
+	}
+
+	/// Creates a model using weights stored in given buffers (one buffer per
+	/// layer, nCount[l] * wCount[l] values each).
+	NNetModel(int inputSize, int[] nCount, int[] wCount, DoubleBuffer[] weights, AFunction actFun,
+			AFunction outActFun) {
+		layers = null;
+		mapped = weights;
+		this.nCount = nCount;
+		this.wCount = wCount;
+		int max = inputSize;
+		for (int i = 0; i < nCount.length; i++) {
+			if (nCount[i] > max)
+				max = nCount[i];
+		}
+		this.inputSize = inputSize;
+		maxSize = max;
+		this.actFun = actFun;
+		this.outActFun = outActFun;
+	}
+
+	/**
+	 * @return a new session with its own buffers for intermediate results
+	 */
+	public InferenceSession newSession() {
+		return new InferenceSession(this);
+	}
+
+	public int getLayerCount() {
+		return nCount.length;
+	}
+
+	public int getLayerSize(int layer) {
+		return nCount[layer];
+	}
+
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	public int getOutputSize() {
+		return (nCount.length > 0) ? nCount[nCount.length - 1] : 0;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return true if weights are used in place from a memory-mapped file
+	 */
+	public boolean isMapped() {
+		return mapped != null;
+	}
+
+	/// Calculates outputs of all layers storing them in the given buffers
+	/// (one buffer per layer). mpot is a temporary buffer of maxSize length.
+	void forward(double[] input, int offset, double[] mpot, double[][] out) {
+		int last = nCount.length - 1;
+
+		for (int l = 0; l <= last; l++) {
+			AFunction fun = (l == last) ? outActFun : actFun;
+			double[] in = (l == 0) ? input : out[l - 1];
+			int off = (l == 0) ? offset : 0;
+
+			if (mapped == null) {
+				layers[l].evaluate(in, off, mpot, out[l], fun);
+			} else {
+				_evaluateMapped(l, in, off, mpot, out[l], fun);
+			}
+		}
+	}
+
+	/// Calculates one layer reading weights directly from the mapped buffer.
+	private void _evaluateMapped(int l, double[] input, int offset, double[] mpotBuf, double[] outBuf,
+			AFunction fun) {
+		DoubleBuffer weights = mapped[l];
+		int inputs = wCount[l] - 1;
+		int row = 0;
+		double result;
+
+		for (int n = 0; n < nCount[l]; n++) {
+			// bias value (the last weight)
+			result = weights.get(row + inputs);
+			// the rest of weights
+			for (int w = 0; w < inputs; w++) {
+				result += weights.get(row + w) * input[offset + w];
+			}
+			mpotBuf[n] = result;
+			row += wCount[l];
+		}
+
+		fun.calc(mpotBuf, outBuf, 0, nCount[l]);
+	}
+
+}
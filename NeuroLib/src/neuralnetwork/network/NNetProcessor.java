@@ -0,0 +1,20 @@
+package neuralnetwork.network;
+
+/**
+ * Common interface of objects calculating results of a feed-forward network
+ * for input vectors stored in arrays.
+ */
+public interface NNetProcessor {
+
+	/**
+	 * Processes one input vector.
+	 * 
+	 * @param input     array containing input values
+	 * @param inOffset  index of the first input value
+	 * @param output    destination array for results
+	 * @param outOffset index of the first result value
+	 * @return number of results (size of the last layer)
+	 */
+	int process(double[] input, int inOffset, double[] output, int outOffset);
+
+}
@@ -0,0 +1,139 @@
+package neuralnetwork.network;
+
+import java.util.Arrays;
+
+/**
+ * Magnitude pruning of weights of a trained network. Pruned weights are set to
+ * zero; bias weights are never pruned. A pruned network can be converted to
+ * NNetSparse, which skips zero weights, and fine-tuned with a learning
+ * algorithm using the mask returned by getMask() (see
+ * BackPAlgBare.setPruningMask()).
+ */
+public final class NNetPruner {
+
+	private NNetPruner() {
+	}
+
+	/**
+	 * Sets to zero all weights (except bias) whose absolute value is below the
+	 * threshold.
+	 *
+	 * @param net       network to prune
+	 * @param threshold minimum absolute value of a kept weight
+	 * @return number of weights set to zero
+	 */
+	public static int pruneByThreshold(NNetFF net, double threshold) {
+		int count = 0;
+
+		for (int l = 0; l < net.lCount; l++) {
+			Layer lr = net.Lrs[l];
+			int inputs = lr.wCount - 1;
+			for (int n = 0; n < lr.nCount; n++) {
+				for (int w = n * lr.wCount; w < n * lr.wCount + inputs; w++) {
+					if (lr.weights[w] != 0.0 && Math.abs(lr.weights[w]) < threshold) {
+						lr.weights[w] = 0.0;
+						count++;
+					}
+				}
+			}
+		}
+		net.markModified();
+		return count;
+	}
+
+	/**
+	 * Sets to zero the given fraction of weights (except bias) with the smallest
+	 * absolute values. Every layer is pruned separately.
+	 *
+	 * @param net      network to prune
+	 * @param fraction fraction of weights of each layer to prune (0.0 - 1.0)
+	 * @return number of weights set to zero
+	 */
+	public static int pruneByFraction(NNetFF net, double fraction) {
+		int count = 0;
+
+		if (fraction <= 0.0)
+			return 0;
+		if (fraction > 1.0)
+			fraction = 1.0;
+
+		for (int l = 0; l < net.lCount; l++) {
+			Layer lr = net.Lrs[l];
+			int inputs = lr.wCount - 1;
+
+			double[] abs = new double[lr.nCount * inputs];
+			for (int n = 0; n < lr.nCount; n++) {
+				for (int w = 0; w < inputs; w++) {
+					abs[n * inputs + w] = Math.abs(lr.weights[n * lr.wCount + w]);
+				}
+			}
+			int prune = (int) (fraction * abs.length);
+			if (prune == 0)
+				continue;
+
+			Arrays.sort(abs);
+			double limit = abs[prune - 1];
+
+			// weights below the limit, then the ones equal to the limit until the
+			// requested number is reached
+			int pruned = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				for (int n = 0; n < lr.nCount; n++) {
+					for (int w = n * lr.wCount; w < n * lr.wCount + inputs && pruned < prune; w++) {
+						double a = Math.abs(lr.weights[w]);
+						if ((pass == 0) ? a < limit : a == limit) {
+							if (lr.weights[w] != 0.0)
+								count++;
+							lr.weights[w] = 0.0;
+							pruned++;
+						}
+					}
+				}
+			}
+		}
+		net.markModified();
+		return count;
+	}
+
+	/**
+	 * Returns the mask of weights which are not pruned: mask[l][i] is false if
+	 * net.Lrs[l].weights[i] equals zero (bias weights are always true).
+	 *
+	 * @param net pruned network
+	 * @return mask of kept weights
+	 */
+	public static boolean[][] getMask(NNetFF net) {
+		boolean[][] mask = new boolean[net.lCount][];
+
+		for (int l = 0; l < net.lCount; l++) {
+			Layer lr = net.Lrs[l];
+			mask[l] = new boolean[lr.weights.length];
+			for (int w = 0; w < lr.weights.length; w++) {
+				mask[l][w] = (lr.weights[w] != 0.0) || (w % lr.wCount == lr.wCount - 1);
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @param net network
+	 * @return fraction of zero weights (bias weights are not counted)
+	 */
+	public static double getSparsity(NNetFF net) {
+		long zeros = 0;
+		long all = 0;
+
+		for (int l = 0; l < net.lCount; l++) {
+			Layer lr = net.Lrs[l];
+			for (int w = 0; w < lr.weights.length; w++) {
+				if (w % lr.wCount == lr.wCount - 1)
+					continue;
+				if (lr.weights[w] == 0.0)
+					zeros++;
+				all++;
+			}
+		}
+		return (all > 0) ? (double) zeros / all : 0.0;
+	}
+
+}
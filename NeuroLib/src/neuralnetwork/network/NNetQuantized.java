@@ -0,0 +1,338 @@
+package neuralnetwork.network;
+
+import neuralnetwork.actfun.AFunction;
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.data.DataVector;
+
+/**
+ * Inference-only copy of a trained network with weights and layer inputs
+ * quantized to 8-bit integers. Weighted sums are accumulated in integers and
+ * converted back to doubles only to calculate activation functions.
+ *
+ * Weights are quantized symmetrically with one scale per neuron or one scale
+ * per layer. Ranges of layer inputs are calibrated on a sample DataPackage -
+ * inputs which are never negative (e.g. outputs of sigmoid layers) use the
+ * unsigned range 0..255, the others -127..127. Bias values are stored as
+ * 32-bit integers in the scale of the weighted sum. Weighted sums are
+ * accumulated in 32-bit integers for layers with at most MAX_INT_INPUTS
+ * inputs (they cannot overflow) and in 64-bit integers for wider layers.
+ *
+ * The object stores intermediate results, so it must not be used by more than
+ * one thread at a time.
+ */
+public class NNetQuantized implements NNetProcessor {
+
+	// maximum number of inputs of a layer for which a weighted sum (bias up to
+	// Integer.MAX_VALUE / 2 and products up to 127 * 255) fits in an int
+	public static final int MAX_INT_INPUTS = (Integer.MAX_VALUE / 2) / (127 * 255);
+
+	private int lCount;
+	private int inputSize;
+
+	private int[] nCount;
+	private int[] inCount;
+
+	// quantized weights without bias (row by row, inCount[l] values per row)
+	private byte[][] weights;
+	// quantized bias values (in the scale of the weighted sum)
+	private int[][] bias;
+	// factors converting weighted sums of neurons back to doubles
+	private double[][] scale;
+	// scales and ranges of layer inputs
+	private double[] inScale;
+	private boolean[] inUnsigned;
+
+	private AFunction actFun;
+	private AFunction outActFun;
+
+	// quantized inputs of subsequent layers
+	private byte[][] qIn;
+	// membrane potentials and outputs of the currently calculated layer
+	private double[] mpot;
+	private double[] act;
+
+	/**
+	 * Result of comparison with the original network.
+	 */
+	public static class Comparison {
+		public final double meanAbsError;
+		public final double maxAbsError;
+
+		Comparison(double meanAbsError, double maxAbsError) {
+			this.meanAbsError = meanAbsError;
+			this.maxAbsError = maxAbsError;
+		}
+
+		@Override
+		public String toString() {
+			return "mean absolute error: " + meanAbsError + ", max absolute error: " + maxAbsError;
+		}
+	}
+
+	/**
+	 * Creates a quantized copy of the network.
+	 *
+	 * @param net         trained network
+	 * @param calibration sample input vectors used to find ranges of layer inputs
+	 * @param perNeuron   true - one weight scale per neuron, false - one weight
+	 *                    scale per layer
+	 * @throws IllegalArgumentException if the calibration package is empty
+	 */
+	public NNetQuantized(NNetFF net, DataPackage calibration, boolean perNeuron) {
+		if (calibration.size() == 0)
+			throw new IllegalArgumentException("Calibration data is empty - ranges of layer inputs are unknown.");
+
+		lCount = net.lCount;
+		inputSize = net.inputSize;
+		actFun = net.actFun;
+		outActFun = net.outActFun;
+
+		nCount = new int[lCount];
+		inCount = new int[lCount];
+		weights = new byte[lCount][];
+		bias = new int[lCount][];
+		scale = new double[lCount][];
+		inScale = new double[lCount];
+		inUnsigned = new boolean[lCount];
+		qIn = new byte[lCount][];
+
+		_calibrate(net, calibration);
+
+		int max = 0;
+		for (int l = 0; l < lCount; l++) {
+			Layer lr = net.Lrs[l];
+			nCount[l] = lr.nCount;
+			inCount[l] = lr.wCount - 1;
+			qIn[l] = new byte[inCount[l]];
+			if (lr.nCount > max)
+				max = lr.nCount;
+			_quantizeLayer(l, lr, perNeuron);
+		}
+
+		mpot = new double[max];
+		act = new double[max];
+	}
+
+	public int getLayerCount() {
+		return lCount;
+	}
+
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	public int getOutputSize() {
+		return (lCount > 0) ? nCount[lCount - 1] : 0;
+	}
+
+	/**
+	 * @return number of bytes taken by quantized weights and bias values
+	 */
+	public long getWeightBytes() {
+		long bytes = 0;
+		for (int l = 0; l < lCount; l++) {
+			bytes += weights[l].length + 4L * bias[l].length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Processes one input vector.
+	 *
+	 * @param input     array containing input values
+	 * @param inOffset  index of the first input value
+	 * @param output    destination array for results
+	 * @param outOffset index of the first result value
+	 * @return number of results (size of the last layer)
+	 */
+	@Override
+	public int process(double[] input, int inOffset, double[] output, int outOffset) {
+		if (lCount <= 0)
+			return 0;
+
+		_quantize(input, inOffset, 0);
+
+		for (int l = 0; l < lCount; l++) {
+			byte[] w = weights[l];
+			byte[] x = qIn[l];
+			int inputs = inCount[l];
+			int row = 0;
+			int acc;
+
+			for (int n = 0; n < nCount[l]; n++) {
+				if (inputs > MAX_INT_INPUTS) {
+					mpot[n] = _sumLong(l, row, bias[l][n]) * scale[l][n];
+					row += inputs;
+					continue;
+				}
+
+				acc = bias[l][n];
+				if (inUnsigned[l]) {
+					for (int k = 0; k < inputs; k++) {
+						acc += w[row + k] * (x[k] & 0xFF);
+					}
+				} else {
+					for (int k = 0; k < inputs; k++) {
+						acc += w[row + k] * x[k];
+					}
+				}
+				mpot[n] = acc * scale[l][n];
+				row += inputs;
+			}
+
+			if (l < lCount - 1) {
+				actFun.calc(mpot, act, 0, nCount[l]);
+				_quantize(act, 0, l + 1);
+			} else {
+				outActFun.calc(mpot, act, 0, nCount[l]);
+				System.arraycopy(act, 0, output, outOffset, nCount[l]);
+			}
+		}
+
+		return nCount[lCount - 1];
+	}
+
+	public int process(DataVector input, DataVector output) {
+		double[] result = new double[getOutputSize()];
+		int size = process(input.toArrayOfDoubles(), 0, result, 0);
+		output.getData().clear();
+		output.merge(result);
+		return size;
+	}
+
+	/**
+	 * Compares results of this network with results of the original network.
+	 *
+	 * @param reference  original (double precision) network
+	 * @param validation input vectors
+	 * @return mean and maximum absolute difference of outputs
+	 */
+	public Comparison compareWith(NNetFF reference, DataPackage validation) {
+		int size = getOutputSize();
+		double[] result = new double[size];
+		double[] expected = new double[size];
+		double sum = 0.0;
+		double max = 0.0;
+		long count = 0;
+
+		for (DataVector row : validation.getList()) {
+			double[] in = row.toArrayOfDoubles();
+			process(in, 0, result, 0);
+			reference.process(in, 0, expected, 0);
+			for (int n = 0; n < size; n++) {
+				double err = Math.abs(result[n] - expected[n]);
+				sum += err;
+				if (err > max)
+					max = err;
+			}
+			count += size;
+		}
+
+		return new Comparison((count > 0) ? sum / count : 0.0, max);
+	}
+
+	/// Calculates a weighted sum of a wide layer in a long (no overflow).
+	private long _sumLong(int l, int row, int biasValue) {
+		byte[] w = weights[l];
+		byte[] x = qIn[l];
+		int inputs = inCount[l];
+		long acc = biasValue;
+
+		if (inUnsigned[l]) {
+			for (int k = 0; k < inputs; k++) {
+				acc += w[row + k] * (x[k] & 0xFF);
+			}
+		} else {
+			for (int k = 0; k < inputs; k++) {
+				acc += w[row + k] * x[k];
+			}
+		}
+		return acc;
+	}
+
+	/// Finds ranges of inputs of all layers processing calibration data. The
+	/// data is processed by a session of a copy of the network, so the state of
+	/// the source network is not changed.
+	private void _calibrate(NNetFF net, DataPackage calibration) {
+		double[] min = new double[lCount];
+		double[] max = new double[lCount];
+
+		NNetModel model = new NNetModel(net);
+		InferenceSession session = model.newSession();
+		double[] result = new double[model.getOutputSize()];
+
+		for (DataVector row : calibration.getList()) {
+			double[] in = row.toArrayOfDoubles();
+			session.process(in, 0, result, 0);
+			for (int l = 0; l < lCount; l++) {
+				double[] values = (l == 0) ? in : session.getLayerOutput(l - 1);
+				int size = (l == 0) ? inputSize : values.length;
+				for (int i = 0; i < size; i++) {
+					if (values[i] < min[l])
+						min[l] = values[i];
+					if (values[i] > max[l])
+						max[l] = values[i];
+				}
+			}
+		}
+
+		for (int l = 0; l < lCount; l++) {
+			inUnsigned[l] = (min[l] >= 0.0);
+			double range = inUnsigned[l] ? max[l] / 255.0 : Math.max(max[l], -min[l]) / 127.0;
+			inScale[l] = (range > 0.0) ? range : 1.0;
+		}
+	}
+
+	/// Quantizes weights of one layer.
+	private void _quantizeLayer(int l, Layer lr, boolean perNeuron) {
+		int inputs = inCount[l];
+		weights[l] = new byte[lr.nCount * inputs];
+		bias[l] = new int[lr.nCount];
+		scale[l] = new double[lr.nCount];
+
+		double layerMax = 0.0;
+		for (int n = 0; n < lr.nCount; n++) {
+			for (int k = 0; k < inputs; k++) {
+				layerMax = Math.max(layerMax, Math.abs(lr.weights[n * lr.wCount + k]));
+			}
+		}
+
+		for (int n = 0; n < lr.nCount; n++) {
+			int row = n * lr.wCount;
+			double wMax = layerMax;
+			if (perNeuron) {
+				wMax = 0.0;
+				for (int k = 0; k < inputs; k++) {
+					wMax = Math.max(wMax, Math.abs(lr.weights[row + k]));
+				}
+			}
+			double wScale = (wMax > 0.0) ? wMax / 127.0 : 1.0;
+
+			for (int k = 0; k < inputs; k++) {
+				long q = Math.round(lr.weights[row + k] / wScale);
+				weights[l][n * inputs + k] = (byte) Math.max(-127, Math.min(127, q));
+			}
+
+			scale[l][n] = wScale * inScale[l];
+			long b = Math.round(lr.weights[row + inputs] / scale[l][n]);
+			bias[l][n] = (int) Math.max(Integer.MIN_VALUE / 2, Math.min(Integer.MAX_VALUE / 2, b));
+		}
+	}
+
+	/// Quantizes input values of the given layer.
+	private void _quantize(double[] values, int offset, int l) {
+		byte[] q = qIn[l];
+		double inv = 1.0 / inScale[l];
+		long v;
+
+		for (int i = 0; i < q.length; i++) {
+			v = Math.round(values[offset + i] * inv);
+			if (inUnsigned[l]) {
+				q[i] = (byte) Math.max(0, Math.min(255, v));
+			} else {
+				q[i] = (byte) Math.max(-127, Math.min(127, v));
+			}
+		}
+	}
+
+}
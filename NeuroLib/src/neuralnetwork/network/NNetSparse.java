@@ -0,0 +1,147 @@
+package neuralnetwork.network;
+
+import neuralnetwork.actfun.AFunction;
+
+/**
+ * Inference copy of a (pruned) network storing weights of each layer in
+ * compressed sparse row format - only non-zero weights are stored together with
+ * their input indexes, so zero weights are neither stored nor multiplied.
+ *
+ * The object stores intermediate results, so it must not be used by more than
+ * one thread at a time.
+ */
+public class NNetSparse implements NNetProcessor {
+
+	private int lCount;
+	private int inputSize;
+	private int[] nCount;
+
+	// rowStart[l][n] .. rowStart[l][n + 1] - 1 are indexes of weights of neuron n
+	private int[][] rowStart;
+	private int[][] column;
+	private double[][] values;
+	private double[][] bias;
+
+	private double[][] mpot;
+	private double[][] out;
+
+	private AFunction actFun;
+	private AFunction outActFun;
+
+	/**
+	 * Creates a sparse copy of the network. Zero weights (except bias) are
+	 * omitted.
+	 *
+	 * @param net source network
+	 */
+	public NNetSparse(NNetFF net) {
+		lCount = net.lCount;
+		inputSize = net.inputSize;
+		actFun = net.actFun;
+		outActFun = net.outActFun;
+
+		nCount = new int[lCount];
+		rowStart = new int[lCount][];
+		column = new int[lCount][];
+		values = new double[lCount][];
+		bias = new double[lCount][];
+		mpot = new double[lCount][];
+		out = new double[lCount][];
+
+		for (int l = 0; l < lCount; l++) {
+			Layer lr = net.Lrs[l];
+			int inputs = lr.wCount - 1;
+
+			int nonZero = 0;
+			for (int n = 0; n < lr.nCount; n++) {
+				for (int w = 0; w < inputs; w++) {
+					if (lr.weights[n * lr.wCount + w] != 0.0)
+						nonZero++;
+				}
+			}
+
+			nCount[l] = lr.nCount;
+			rowStart[l] = new int[lr.nCount + 1];
+			column[l] = new int[nonZero];
+			values[l] = new double[nonZero];
+			bias[l] = new double[lr.nCount];
+			mpot[l] = new double[lr.nCount];
+			out[l] = new double[lr.nCount];
+
+			int i = 0;
+			for (int n = 0; n < lr.nCount; n++) {
+				rowStart[l][n] = i;
+				for (int w = 0; w < inputs; w++) {
+					double value = lr.weights[n * lr.wCount + w];
+					if (value != 0.0) {
+						column[l][i] = w;
+						values[l][i] = value;
+						i++;
+					}
+				}
+				bias[l][n] = lr.weights[n * lr.wCount + inputs];
+			}
+			rowStart[l][lr.nCount] = i;
+		}
+	}
+
+	public int getLayerCount() {
+		return lCount;
+	}
+
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	public int getOutputSize() {
+		return (lCount > 0) ? nCount[lCount - 1] : 0;
+	}
+
+	/**
+	 * @return number of stored (non-zero) weights without bias
+	 */
+	public int getNonZeroCount() {
+		int count = 0;
+		for (int l = 0; l < lCount; l++) {
+			count += values[l].length;
+		}
+		return count;
+	}
+
+	@Override
+	public int process(double[] input, int inOffset, double[] output, int outOffset) {
+		if (lCount <= 0)
+			return 0;
+
+		for (int l = 0; l < lCount; l++) {
+			AFunction fun = (l == lCount - 1) ? outActFun : actFun;
+			if (l == 0) {
+				_evaluate(0, input, inOffset, fun);
+			} else {
+				_evaluate(l, out[l - 1], 0, fun);
+			}
+		}
+
+		System.arraycopy(out[lCount - 1], 0, output, outOffset, nCount[lCount - 1]);
+		return nCount[lCount - 1];
+	}
+
+	/// Calculates membrane potentials and outputs of one layer.
+	private void _evaluate(int l, double[] input, int offset, AFunction fun) {
+		int[] start = rowStart[l];
+		int[] col = column[l];
+		double[] val = values[l];
+		double result;
+
+		for (int n = 0; n < nCount[l]; n++) {
+			result = bias[l][n];
+			for (int i = start[n]; i < start[n + 1]; i++) {
+				result += val[i] * input[offset + col[i]];
+			}
+			mpot[l][n] = result;
+		}
+
+		fun.calc(mpot[l], out[l], 0, nCount[l]);
+	}
+
+}
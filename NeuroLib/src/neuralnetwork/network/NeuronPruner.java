@@ -0,0 +1,189 @@
+package neuralnetwork.network;
+
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.data.DataVector;
+
+/**
+ * Structured pruning - removes whole neurons of hidden layers, so the network
+ * stays dense but gets smaller.
+ *
+ * Neurons are ranked by their contribution to the next layer. Without data the
+ * contribution is the Euclidean norm of the neuron's outgoing weights. With a
+ * DataPackage it is the standard deviation of the neuron's output times that
+ * norm - the constant part of the output (its mean) does not carry information
+ * and is moved to bias weights of the next layer when the neuron is removed.
+ *
+ * Layers are numbered from 1 as in NNetFF.setLayerSize().
+ */
+public final class NeuronPruner {
+
+	private NeuronPruner() {
+	}
+
+	/**
+	 * Ranks neurons of a hidden layer.
+	 *
+	 * @param net          network
+	 * @param layer_number hidden layer (1 .. number of layers - 1)
+	 * @param input        input vectors used to collect output statistics or
+	 *                     null to use outgoing weights only
+	 * @return contribution of subsequent neurons (higher is more important) or
+	 *         null if the layer is not a hidden layer
+	 */
+	public static double[] rankNeurons(NNetFF net, int layer_number, DataPackage input) {
+		int l = layer_number - 1;
+		if (l < 0 || l >= net.lCount - 1)
+			return null;
+
+		double[] score = _outgoingNorms(net, l);
+
+		if (input != null && input.size() > 0) {
+			double[] mean = new double[net.Lrs[l].nCount];
+			double[] std = new double[net.Lrs[l].nCount];
+			_statistics(net, l, input, mean, std);
+			for (int n = 0; n < score.length; n++) {
+				score[n] *= std[n];
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Removes the weakest neurons of a hidden layer (see rankNeurons()). The
+	 * layer is restructured with NNetFF.setLayerSize() and the remaining weights
+	 * of this and the next layer are copied back. If input vectors are given, the
+	 * mean output of each removed neuron times its outgoing weight is added to
+	 * the bias of the next layer.
+	 *
+	 * @param net          network to shrink
+	 * @param layer_number hidden layer (1 .. number of layers - 1)
+	 * @param keep         number of neurons to keep (at least 1)
+	 * @param input        input vectors used to rank neurons and correct bias
+	 *                     values or null
+	 * @return false if the layer is not a hidden layer or keep is not valid
+	 */
+	public static boolean removeNeurons(NNetFF net, int layer_number, int keep, DataPackage input) {
+		int l = layer_number - 1;
+		if (l < 0 || l >= net.lCount - 1)
+			return false;
+		if (keep <= 0 || keep > net.Lrs[l].nCount)
+			return false;
+		if (keep == net.Lrs[l].nCount)
+			return true;
+
+		Layer old = new Layer(net.Lrs[l]);
+		Layer oldNext = new Layer(net.Lrs[l + 1]);
+
+		double[] score = _outgoingNorms(net, l);
+		double[] mean = new double[old.nCount];
+		if (input != null && input.size() > 0) {
+			double[] std = new double[old.nCount];
+			_statistics(net, l, input, mean, std);
+			for (int n = 0; n < score.length; n++) {
+				score[n] *= std[n];
+			}
+		}
+
+		// select neurons with the highest scores (keeping their order)
+		boolean[] kept = new boolean[old.nCount];
+		for (int i = 0; i < keep; i++) {
+			int best = -1;
+			for (int n = 0; n < old.nCount; n++) {
+				if (!kept[n] && (best < 0 || score[n] > score[best]))
+					best = n;
+			}
+			kept[best] = true;
+		}
+
+		net.setLayerSize(layer_number, keep);
+		Layer lr = net.Lrs[l];
+		Layer next = net.Lrs[l + 1];
+
+		// copy weights of kept neurons
+		int k = 0;
+		for (int n = 0; n < old.nCount; n++) {
+			if (kept[n]) {
+				System.arraycopy(old.weights, n * old.wCount, lr.weights, k * lr.wCount, old.wCount);
+				k++;
+			}
+		}
+
+		// copy weights of the next layer connected to kept neurons and move
+		// constant contribution of removed neurons to bias
+		for (int j = 0; j < oldNext.nCount; j++) {
+			int row = j * oldNext.wCount;
+			double bias = oldNext.weights[row + old.nCount];
+			k = 0;
+			for (int n = 0; n < old.nCount; n++) {
+				if (kept[n]) {
+					next.weights[j * next.wCount + k] = oldNext.weights[row + n];
+					k++;
+				} else {
+					bias += oldNext.weights[row + n] * mean[n];
+				}
+			}
+			next.weights[j * next.wCount + keep] = bias;
+		}
+		net.markModified();
+
+		return true;
+	}
+
+	/**
+	 * Removes the given fraction of the weakest neurons from every hidden layer
+	 * (see removeNeurons()). Layers are processed from the first one, so
+	 * statistics of later layers are collected for the already reduced network.
+	 *
+	 * @param net      network to shrink
+	 * @param fraction fraction of neurons to remove from each hidden layer
+	 * @param input    input vectors used to rank neurons and correct bias values
+	 *                 or null
+	 */
+	public static void removeNeurons(NNetFF net, double fraction, DataPackage input) {
+		for (int l = 0; l < net.lCount - 1; l++) {
+			int keep = net.Lrs[l].nCount - (int) (fraction * net.Lrs[l].nCount);
+			if (keep < 1)
+				keep = 1;
+			removeNeurons(net, l + 1, keep, input);
+		}
+	}
+
+	/// Returns Euclidean norms of outgoing weights of neurons of layer l.
+	private static double[] _outgoingNorms(NNetFF net, int l) {
+		Layer next = net.Lrs[l + 1];
+		double[] norm = new double[net.Lrs[l].nCount];
+
+		for (int j = 0; j < next.nCount; j++) {
+			for (int n = 0; n < norm.length; n++) {
+				double w = next.weights[j * next.wCount + n];
+				norm[n] += w * w;
+			}
+		}
+		for (int n = 0; n < norm.length; n++) {
+			norm[n] = Math.sqrt(norm[n]);
+		}
+		return norm;
+	}
+
+	/// Calculates mean and standard deviation of outputs of layer l.
+	private static void _statistics(NNetFF net, int l, DataPackage input, double[] mean, double[] std) {
+		double[] out = net.Lrs[l].out;
+		int count = 0;
+
+		for (DataVector row : input.getList()) {
+			net.setInput(row.toArrayOfDoubles(), 0);
+			for (int n = 0; n < mean.length; n++) {
+				mean[n] += out[n];
+				std[n] += out[n] * out[n];
+			}
+			count++;
+		}
+
+		for (int n = 0; n < mean.length; n++) {
+			mean[n] /= count;
+			double variance = std[n] / count - mean[n] * mean[n];
+			std[n] = (variance > 0.0) ? Math.sqrt(variance) : 0.0;
+		}
+	}
+
+}
@@ -1,66 +1,152 @@
 package neuralnetwork.neuron;
 
-public class Neuron {
-	// wyjcie
-	public double out;
+import neuralnetwork.network.Layer;
 
-	public double mpot;
+/**
+ * A view of one neuron stored in a layer. The weights, output and membrane
+ * potential are kept in the flat arrays of the layer; this object only
+ * remembers the layer and the position of the neuron.
+ *
+ * The former public fields are replaced by accessors: Weights - getWeight(),
+ * setWeight(), getWeights(), setWeights(); out - getOut(), setOut(); mpot -
+ * getMpot(), setMpot(); wCount - getWeightCount().
+ */
+public class Neuron {
 
-	// wagi
-	public double[] Weights;
+	private Layer layer;
+	private int index;
 
-	public int wCount;
+	public Neuron(Layer layer, int index) {
+		this.layer = layer;
+		this.index = index;
+	}
 
+	/**
+	 * Creates a stand-alone neuron without weights.
+	 *
+	 * @deprecated neurons are stored in layers - use Layer.getNeuron() or
+	 *             Neuron(int)
+	 */
+	@Deprecated
 	public Neuron() {
-		out = 0.0;
-		wCount = 0;
-		mpot = 0.0;
+		this(0);
+	}
+
+	/**
+	 * Creates a stand-alone neuron with its own single-neuron layer.
+	 *
+	 * @param elems number of weights (including bias)
+	 */
+	public Neuron(int elems) {
+		layer = new Layer(1, elems);
+		index = 0;
 	}
 
+	/**
+	 * Creates a stand-alone copy of the given neuron.
+	 *
+	 * @param n source neuron
+	 */
 	public Neuron(Neuron n) {
+		this(n.getWeightCount());
 		assign(n);
 	}
 
-	public Neuron(int elems) {
-		out = 0.0;
-		wCount = 0;
-		mpot = 0.0;
-		Weights = null;
-
+	/**
+	 * Detaches the neuron from its layer and gives it its own single-neuron
+	 * layer with the given number of weights (all zero).
+	 *
+	 * @param elems number of weights (including bias)
+	 * @deprecated neurons are stored in layers - use Layer.restructure()
+	 */
+	@Deprecated
+	public void restructure(int elems) {
 		if (elems <= 0)
 			return;
 
-		Weights = new double[elems];
-		wCount = elems;
+		layer = new Layer(1, elems);
+		index = 0;
+	}
 
+	public Layer getLayer() {
+		return layer;
 	}
 
-	public void restructure(int elems) {
-		if (elems <= 0)
-			return;
+	public int getIndex() {
+		return index;
+	}
+
+	public int getWeightCount() {
+		return layer.wCount;
+	}
 
-		Weights = new double[elems];
-		wCount = elems;
-		mpot = 0.0;
-		out = 0.0;
+	public double getWeight(int w) {
+		return layer.weights[index * layer.wCount + w];
+	}
+
+	public void setWeight(int w, double value) {
+		layer.weights[index * layer.wCount + w] = value;
+		layer.markModified();
+	}
+
+	/**
+	 * @return bias weight (the last weight of the neuron)
+	 */
+	public double getBias() {
+		return getWeight(layer.wCount - 1);
+	}
+
+	/**
+	 * @return a copy of the neuron's weights (bias is the last element)
+	 */
+	public double[] getWeights() {
+		double[] copy = new double[layer.wCount];
+		System.arraycopy(layer.weights, index * layer.wCount, copy, 0, layer.wCount);
+		return copy;
+	}
+
+	/**
+	 * Sets all weights of the neuron (bias is the last element).
+	 *
+	 * @param values new weights (at least getWeightCount() values)
+	 */
+	public void setWeights(double[] values) {
+		System.arraycopy(values, 0, layer.weights, index * layer.wCount, layer.wCount);
+		layer.markModified();
+	}
+
+	public double getOut() {
+		return layer.out[index];
+	}
+
+	public void setOut(double value) {
+		layer.out[index] = value;
+	}
+
+	public double getMpot() {
+		return layer.mpot[index];
+	}
 
+	public void setMpot(double value) {
+		layer.mpot[index] = value;
 	}
 
+	/**
+	 * Copies weights, output and membrane potential from the source neuron. Both
+	 * neurons must have the same number of weights, otherwise nothing is copied.
+	 *
+	 * @param n source neuron
+	 * @return this neuron
+	 */
 	public Neuron assign(Neuron n) {
-		if (n.wCount <= 0) {
-			Weights = null;
-			wCount = 0;
-			out = 0;
-			mpot = 0;
+		if (n.getWeightCount() != layer.wCount)
 			return this;
-		}
-		Weights = new double[n.wCount];
-		for (int i = 0; i < n.wCount; i++) {
-			Weights[i] = n.Weights[i];
-			wCount = n.wCount;
-			mpot = n.mpot;
-			out = n.out;
-		}
+
+		System.arraycopy(n.layer.weights, n.index * n.layer.wCount, layer.weights, index * layer.wCount,
+				layer.wCount);
+		layer.out[index] = n.getOut();
+		layer.mpot[index] = n.getMpot();
+		layer.markModified();
 		return this;
 	}
 
@@ -0,0 +1,61 @@
+package neuralnetwork.actfun;
+
+import java.util.Random;
+
+/**
+ * Micro-benchmark of AFSigm.calc(double[], double[], int, int) in exact mode
+ * and in fast mode with several error limits. Every configuration is measured
+ * after several warm-up rounds, the best round is reported. Results depend on
+ * the CPU and JVM.
+ */
+public class AFSigmBenchmark {
+
+	private static final double[] MAX_ERRORS = { 1e-2, 1e-4, 1e-6 };
+	private static final int SIZE = 4096;
+	private static final int ROUNDS = 10;
+	private static final long OPERATIONS = 50_000_000L;
+
+	// result of all calls - keeps the JIT from removing them
+	private static double sink;
+
+	public static void main(String[] args) {
+		Random rnd = new Random(1);
+		double[] in = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			in[i] = 16.0 * rnd.nextDouble() - 8.0;
+		}
+
+		AFSigm exact = new AFSigm(1.0);
+		double base = _measure(exact, in);
+		System.out.printf("exact            %8.2f ns/value%n", base);
+
+		for (double maxError : MAX_ERRORS) {
+			AFSigm fast = new AFSigm(1.0);
+			fast.setFastMode(maxError);
+			double time = _measure(fast, in);
+			System.out.printf("fast (%7.0e)  %8.2f ns/value  speed-up %5.2f%n", maxError, time, base / time);
+		}
+
+		if (sink == 42.0)
+			System.out.println();
+	}
+
+	/// Returns the best time of calculating one value in nanoseconds.
+	private static double _measure(AFSigm fun, double[] in) {
+		double[] out = new double[in.length];
+		long calls = Math.max(1, OPERATIONS / in.length);
+		double best = Double.MAX_VALUE;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (long c = 0; c < calls; c++) {
+				fun.calc(in, out, 0, in.length);
+				sink += out[(int) (c % in.length)];
+			}
+			long time = System.nanoTime() - start;
+			best = Math.min(best, (double) time / (calls * in.length));
+		}
+		return best;
+	}
+
+}
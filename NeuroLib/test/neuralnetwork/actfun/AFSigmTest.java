@@ -0,0 +1,139 @@
+package neuralnetwork.actfun;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Worst-case error of the fast mode of AFSigm compared with the exact mode and
+ * derivatives of activation functions.
+ */
+public class AFSigmTest {
+
+	private static final double[] MAX_ERRORS = { 1e-2, 1e-3, 1e-4, 1e-6, AFSigm.MIN_FAST_ERROR };
+	private static final double[] BETAS = { 0.5, 1.0, 3.0 };
+
+	@Test
+	public void fastModeErrorIsBelowLimitOverWholeRange() {
+		for (double maxError : MAX_ERRORS) {
+			for (double beta : BETAS) {
+				// the table covers t = beta * x in [-r, r], the sweep goes 50% beyond
+				// it to cover the clamped tails
+				double r = Math.log(2.0 / maxError) / beta;
+				_sweep(beta, maxError, -1.5 * r, 1.5 * r, 2_000_001);
+			}
+		}
+	}
+
+	@Test
+	public void fastModeErrorIsBelowLimitFarInTails() {
+		for (double maxError : MAX_ERRORS) {
+			AFSigm exact = new AFSigm(1.0);
+			AFSigm fast = new AFSigm(1.0);
+			fast.setFastMode(maxError);
+
+			for (double x : new double[] { -1e300, -1e6, -745.0, -50.0, 50.0, 745.0, 1e6, 1e300,
+					Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY }) {
+				assertEquals(exact.calc(x), fast.calc(x), maxError, "x = " + x + ", maxError = " + maxError);
+			}
+		}
+	}
+
+	@Test
+	public void fastModeErrorIsBelowLimitForRandomArguments() {
+		Random rnd = new Random(1);
+		for (double maxError : MAX_ERRORS) {
+			AFSigm exact = new AFSigm(0.5);
+			AFSigm fast = new AFSigm(0.5);
+			fast.setFastMode(maxError);
+
+			double[] in = new double[100_000];
+			for (int i = 0; i < in.length; i++) {
+				in[i] = 120.0 * rnd.nextDouble() - 60.0;
+			}
+			double[] expected = new double[in.length];
+			double[] actual = new double[in.length];
+			exact.calc(in, expected, 0, in.length);
+			fast.calc(in, actual, 0, in.length);
+
+			for (int i = 0; i < in.length; i++) {
+				assertEquals(expected[i], actual[i], maxError, "x = " + in[i] + ", maxError = " + maxError);
+			}
+		}
+	}
+
+	@Test
+	public void exactModeIsRestored() {
+		AFSigm sigm = new AFSigm(1.0);
+		double exact = sigm.calc(0.3);
+		sigm.setFastMode(1e-2);
+		sigm.setExactMode();
+
+		assertTrue(!sigm.isFastMode());
+		assertEquals(exact, sigm.calc(0.3), 0.0);
+	}
+
+	@Test
+	public void exactDerivativeIsNotRoundedToZero() {
+		AFSigm sigm = new AFSigm(0.5);
+		double[] x = { -80.0, -3.0, 0.0, 3.0, 80.0 };
+		double[] bulk = new double[x.length];
+		sigm.deri(x, bulk, 0, x.length);
+
+		for (int i = 0; i < x.length; i++) {
+			double e = Math.exp(-0.5 * x[i]);
+			double expected = 0.5 * e / ((1.0 + e) * (1.0 + e));
+			assertEquals(expected, sigm.deri(x[i]), 1e-15 * expected);
+			assertEquals(sigm.deri(x[i]), bulk[i], 0.0);
+			assertTrue(sigm.deri(x[i]) > 0.0);
+		}
+		// the output form used in learning loses it when the output is rounded to 1
+		assertEquals(0.0, sigm.deriFromOut(sigm.calc(80.0)), 0.0);
+	}
+
+	@Test
+	public void outputDerivativeNeedsSupport() {
+		AFunction fun = new AFunction() {
+			@Override
+			public double calc(double x) {
+				return x * x;
+			}
+
+			@Override
+			public double deri(double x) {
+				return 2.0 * x;
+			}
+		};
+
+		assertThrows(UnsupportedOperationException.class,
+				() -> fun.deriFromOut(new double[] { 1.0 }, new double[1], 0, 1));
+		assertThrows(UnsupportedOperationException.class,
+				() -> fun.deriFromOut(new float[] { 1.0f }, new float[1], 0, 1));
+	}
+
+	/// Checks values and derivatives of count points evenly spread over
+	/// [from, to].
+	private static void _sweep(double beta, double maxError, double from, double to, int count) {
+		AFSigm exact = new AFSigm(beta);
+		AFSigm fast = new AFSigm(beta);
+		fast.setFastMode(maxError);
+
+		double worst = 0.0;
+		double worstDeri = 0.0;
+		double step = (to - from) / (count - 1);
+		for (int i = 0; i < count; i++) {
+			double x = from + i * step;
+			worst = Math.max(worst, Math.abs(fast.calc(x) - exact.calc(x)));
+			worstDeri = Math.max(worstDeri, Math.abs(fast.deri(x) - exact.deri(x)));
+		}
+
+		assertTrue(worst <= maxError, "beta " + beta + ": error " + worst + " > " + maxError);
+		assertTrue(worstDeri <= beta * maxError,
+				"beta " + beta + ": error of derivative " + worstDeri + " > " + beta * maxError);
+	}
+
+}
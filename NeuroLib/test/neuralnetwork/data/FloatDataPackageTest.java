@@ -0,0 +1,90 @@
+package neuralnetwork.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.learningalg.BackPAlgM;
+import neuralnetwork.learningalg.BackPAlgMFloat;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Single precision data sets and learning of BackPAlgMFloat on them.
+ */
+public class FloatDataPackageTest {
+
+	@Test
+	public void conversionKeepsRows() {
+		DataPackage src = new DataPackage();
+		src.add(new DataVector(new double[] { 2.0 }));
+		src.add(new DataVector(new double[] { 0.5, -1.25, 3.0 }));
+
+		FloatDataPackage floats = new FloatDataPackage(src);
+
+		assertEquals(2, floats.size());
+		assertEquals(1, floats.getMinRowSize());
+		assertEquals(3, floats.getMaxRowSize());
+		assertArrayEquals(new float[] { 0.5f, -1.25f, 3.0f }, floats.get(1));
+		assertArrayEquals(src.get(1).toArrayOfDoubles(), floats.toDataPackage().get(1).toArrayOfDoubles(), 0.0);
+	}
+
+	@Test
+	public void loadTextFileParsesRows() throws IOException {
+		File file = File.createTempFile("floatdata", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList("# header", "1.5 2", "", "-0.25;4;8"));
+
+		FloatDataPackage floats = new FloatDataPackage();
+		assertTrue(floats.loadTextFile(file.getPath()));
+
+		assertEquals(2, floats.size());
+		assertArrayEquals(new float[] { 1.5f, 2.0f }, floats.get(0));
+		assertArrayEquals(new float[] { -0.25f, 4.0f, 8.0f }, floats.get(1));
+	}
+
+	@Test
+	public void learningOnFloatPackageMatchesDataPackage() throws NeuroException {
+		DataPackage in = new DataPackage();
+		DataPackage out = new DataPackage();
+		for (int a = 0; a < 2; a++) {
+			for (int b = 0; b < 2; b++) {
+				in.add(new DataVector(new double[] { a, b }));
+				out.add(new DataVector(new double[] { 0.1 + 0.8 * (a ^ b) }));
+			}
+		}
+
+		NNetFF start = new NNetFF(2, 4, 1);
+		start.initializeWeights(-1.0, 1.0, 3);
+		NNetFF a = new NNetFF(start);
+		NNetFF b = new NNetFF(start);
+		NNetFF exact = new NNetFF(start);
+
+		double errA = _learn(a, new BackPAlgMFloat()).learn(in, out);
+		double errB = ((BackPAlgMFloat) _learn(b, new BackPAlgMFloat())).learn(new FloatDataPackage(in),
+				new FloatDataPackage(out));
+		double errExact = _learn(exact, new BackPAlgM()).learn(in, out);
+
+		assertEquals(errA, errB, 0.0);
+		for (int l = 0; l < a.lCount; l++) {
+			assertArrayEquals(a.Lrs[l].weights, b.Lrs[l].weights, 0.0);
+		}
+		assertEquals(errExact, errB, 1e-4);
+	}
+
+	private static BackPAlgM _learn(NNetFF net, BackPAlgM alg) {
+		alg.setNeuralNetwork(net);
+		alg.setEta(2.0);
+		alg.setMaxError(0.0);
+		alg.setMaxIter(2000);
+		return alg;
+	}
+
+}
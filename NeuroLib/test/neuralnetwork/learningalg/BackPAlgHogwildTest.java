@@ -0,0 +1,213 @@
+package neuralnetwork.learningalg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import neuralnetwork.actfun.AFSigm;
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.data.DataVector;
+import neuralnetwork.exceptions.NeuroException;
+import neuralnetwork.network.NNetFF;
+
+/**
+ * Convergence of asynchronous learning compared with sequential
+ * back-propagation (BackPAlgBare) started from the same weights.
+ */
+public class BackPAlgHogwildTest {
+
+	private static final long SEED = 7;
+
+	@Test
+	public void oneTaskMatchesSequentialLearning() throws NeuroException {
+		DataPackage in = new DataPackage();
+		DataPackage out = new DataPackage();
+		_xor(in, out);
+
+		NNetFF start = _network(2, 4, 1);
+		NNetFF seq = _sequential(new NNetFF(start), in, out, 2.0, 200);
+		NNetFF hog = _hogwild(new NNetFF(start), in, out, 2.0, 200, 1, BackPAlgHogwild.DEFAULT_MAX_STALENESS);
+
+		for (int l = 0; l < seq.lCount; l++) {
+			assertArrayEquals(seq.Lrs[l].weights, hog.Lrs[l].weights, 1e-12);
+		}
+	}
+
+	@Test
+	public void xorConvergesLikeSequentialLearning() throws NeuroException {
+		DataPackage in = new DataPackage();
+		DataPackage out = new DataPackage();
+		_xor(in, out);
+
+		NNetFF start = _network(2, 4, 1);
+		double seq = _meanError(_sequential(new NNetFF(start), in, out, 2.0, 5000), in, out);
+		double hog = _meanError(_hogwild(new NNetFF(start), in, out, 2.0, 5000, 4, 2), in, out);
+
+		assertTrue(seq < 0.05, "sequential error " + seq);
+		assertTrue(hog < 0.05, "asynchronous error " + hog);
+	}
+
+	@Test
+	public void sineFitConvergesLikeSequentialLearning() throws NeuroException {
+		DataPackage in = new DataPackage();
+		DataPackage out = new DataPackage();
+		_sine(in, out, 200);
+
+		NNetFF start = _network(1, 8, 1);
+		double seq = _meanError(_sequential(new NNetFF(start), in, out, 1.0, 1000), in, out);
+		double hog = _meanError(_hogwild(new NNetFF(start), in, out, 1.0, 1000, 4, 2), in, out);
+
+		assertTrue(seq < 0.05, "sequential error " + seq);
+		assertTrue(hog < 2.0 * seq + 0.02, "asynchronous error " + hog + ", sequential error " + seq);
+	}
+
+	@Test
+	public void staleUpdateIsRecalculated() throws NeuroException {
+		DataPackage in = new DataPackage();
+		DataPackage out = new DataPackage();
+		_xor(in, out);
+
+		// two tasks with two samples each: both tasks meet in their first forward
+		// pass, then the second one waits until the other task has finished, so
+		// its first update is stale by two updates and is calculated again
+		CountDownLatch finished = new CountDownLatch(1);
+		NNetFF net = _network(2, 4, 1);
+		net.setActFun(new AFSigmWaiting(finished));
+
+		BackPAlgHogwild alg = new BackPAlgHogwild();
+		alg.setNeuralNetwork(net);
+		alg.setExecutor(task -> new Thread(() -> {
+			task.run();
+			finished.countDown();
+		}).start());
+		alg.setParallelism(2);
+		alg.setMaxStaleness(0);
+		alg.setEta(1.0);
+		alg.setMaxError(0.0);
+		alg.setMaxIter(1);
+		alg.learn(in, out);
+
+		assertEquals(1, alg.getRecalculatedUpdates());
+		assertEquals(0, alg.getDroppedUpdates());
+	}
+
+	@Test
+	public void uncappedLearningDoesNotCountUpdates() throws NeuroException {
+		DataPackage in = new DataPackage();
+		DataPackage out = new DataPackage();
+		_sine(in, out, 200);
+
+		BackPAlgHogwild alg = new BackPAlgHogwild();
+		alg.setNeuralNetwork(_network(1, 8, 1));
+		alg.setParallelism(4);
+		alg.setEta(1.0);
+		alg.setMaxError(0.0);
+		alg.setMaxIter(20);
+		alg.learn(in, out);
+
+		assertEquals(0, alg.getRecalculatedUpdates());
+		assertEquals(0, alg.getDroppedUpdates());
+	}
+
+	/// Sigmoid which holds the first evaluation of two threads until both of them
+	/// arrive, then lets the first one go and blocks the other one until the
+	/// latch is released.
+	private static class AFSigmWaiting extends AFSigm {
+		private final CountDownLatch latch;
+		private final CountDownLatch arrived = new CountDownLatch(2);
+		private final AtomicReference<Thread> first = new AtomicReference<>();
+		private final Set<Thread> waited = ConcurrentHashMap.newKeySet();
+
+		AFSigmWaiting(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void calc(double[] in, double[] out, int off, int len) {
+			Thread current = Thread.currentThread();
+			if (waited.add(current)) {
+				boolean isFirst = first.compareAndSet(null, current);
+				arrived.countDown();
+				_await(arrived);
+				if (!isFirst)
+					_await(latch);
+			}
+			super.calc(in, out, off, len);
+		}
+
+		private static void _await(CountDownLatch l) {
+			try {
+				if (!l.await(10, TimeUnit.SECONDS))
+					throw new IllegalStateException("the other task does not respond");
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static NNetFF _network(int inputs, int... neurons) {
+		NNetFF net = new NNetFF(inputs, neurons);
+		net.initializeWeights(-1.0, 1.0, SEED);
+		return net;
+	}
+
+	private static NNetFF _sequential(NNetFF net, DataPackage in, DataPackage out, double eta, long epochs)
+			throws NeuroException {
+		BackPAlgBare alg = new BackPAlgBare();
+		alg.setNeuralNetwork(net);
+		alg.setEta(eta);
+		alg.setMaxError(0.0);
+		alg.setMaxIter(epochs);
+		alg.learn(in, out);
+		return net;
+	}
+
+	private static NNetFF _hogwild(NNetFF net, DataPackage in, DataPackage out, double eta, long epochs, int tasks,
+			int staleness) throws NeuroException {
+		BackPAlgHogwild alg = new BackPAlgHogwild();
+		alg.setNeuralNetwork(net);
+		alg.setEta(eta);
+		alg.setParallelism(tasks);
+		alg.setMaxStaleness(staleness);
+		alg.setMaxError(0.0);
+		alg.setMaxIter(epochs);
+		alg.learn(in, out);
+		return net;
+	}
+
+	private static double _meanError(NNetFF net, DataPackage in, DataPackage out) {
+		double sum = 0.0;
+		double[] result = new double[1];
+		for (int i = 0; i < in.size(); i++) {
+			net.process(in.get(i).toArrayOfDoubles(), 0, result, 0);
+			sum += Math.abs(result[0] - out.get(i).get(0));
+		}
+		return sum / in.size();
+	}
+
+	private static void _xor(DataPackage in, DataPackage out) {
+		for (int a = 0; a < 2; a++) {
+			for (int b = 0; b < 2; b++) {
+				in.add(new DataVector(new double[] { a, b }));
+				out.add(new DataVector(new double[] { 0.1 + 0.8 * (a ^ b) }));
+			}
+		}
+	}
+
+	private static void _sine(DataPackage in, DataPackage out, int count) {
+		for (int i = 0; i < count; i++) {
+			double x = (double) i / (count - 1);
+			in.add(new DataVector(new double[] { x }));
+			out.add(new DataVector(new double[] { 0.5 + 0.4 * Math.sin(2.0 * Math.PI * x) }));
+		}
+	}
+
+}
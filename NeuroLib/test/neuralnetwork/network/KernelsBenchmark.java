@@ -0,0 +1,63 @@
+package neuralnetwork.network;
+
+import java.util.Random;
+
+/**
+ * Micro-benchmark of Kernels.dot() in default (scalar) and unrolled mode. Run
+ * main() with a warmed-up JIT in mind: every configuration is measured after
+ * several warm-up rounds, the best round is reported. Results depend on the
+ * CPU and JVM - the unrolled mode helps only when the dot product is limited by
+ * the latency of floating-point additions (long vectors kept in cache).
+ */
+public class KernelsBenchmark {
+
+	private static final int[] LENGTHS = { 16, 64, 256, 1024, 4096 };
+	private static final int ROUNDS = 10;
+	private static final long OPERATIONS = 20_000_000L;
+
+	// result of all calls - keeps the JIT from removing them
+	private static double sink;
+
+	public static void main(String[] args) {
+		Random rnd = new Random(1);
+		boolean mode = Kernels.isUnrolled();
+
+		System.out.println("length  scalar ns/op  unrolled ns/op  speed-up");
+		for (int len : LENGTHS) {
+			double[] a = new double[len];
+			double[] b = new double[len];
+			for (int i = 0; i < len; i++) {
+				a[i] = rnd.nextDouble();
+				b[i] = rnd.nextDouble();
+			}
+
+			double scalar = _measure(false, a, b);
+			double unrolled = _measure(true, a, b);
+			System.out.printf("%6d  %12.1f  %14.1f  %8.2f%n", len, scalar, unrolled, scalar / unrolled);
+		}
+
+		Kernels.setUnrolled(mode);
+		if (sink == 42.0)
+			System.out.println();
+	}
+
+	/// Returns the best time of one dot() call in nanoseconds.
+	private static double _measure(boolean unrolled, double[] a, double[] b) {
+		Kernels.setUnrolled(unrolled);
+		long calls = Math.max(1, OPERATIONS / a.length);
+		double best = Double.MAX_VALUE;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			double sum = 0.0;
+			for (long c = 0; c < calls; c++) {
+				sum = Kernels.dot(sum * 1e-9, a, 0, b, 0, a.length);
+			}
+			long time = System.nanoTime() - start;
+			sink += sum;
+			best = Math.min(best, (double) time / calls);
+		}
+		return best;
+	}
+
+}
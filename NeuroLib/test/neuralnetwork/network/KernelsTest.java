@@ -0,0 +1,99 @@
+package neuralnetwork.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Results of Kernels in both modes compared with plain scalar loops.
+ */
+public class KernelsTest {
+
+	// lengths below, equal to and above multiples of the unrolling factor
+	private static final int[] LENGTHS = { 0, 1, 2, 3, 4, 5, 7, 8, 9, 63, 64, 65, 1001 };
+
+	@Test
+	public void dotEqualsScalarLoopInDefaultMode() {
+		boolean mode = Kernels.isUnrolled();
+		try {
+			Kernels.setUnrolled(false);
+			Random rnd = new Random(1);
+			for (int len : LENGTHS) {
+				double[] a = _random(rnd, len + 3);
+				double[] b = _random(rnd, len + 5);
+				assertEquals(_dot(0.5, a, 3, b, 5, len), Kernels.dot(0.5, a, 3, b, 5, len), 0.0, "length " + len);
+			}
+		} finally {
+			Kernels.setUnrolled(mode);
+		}
+	}
+
+	@Test
+	public void unrolledDotIsWithinToleranceOfScalarLoop() {
+		boolean mode = Kernels.isUnrolled();
+		try {
+			Kernels.setUnrolled(true);
+			Random rnd = new Random(2);
+			for (int len : LENGTHS) {
+				double[] a = _random(rnd, len + 1);
+				double[] b = _random(rnd, len + 2);
+				double expected = _dot(-0.25, a, 1, b, 2, len);
+
+				// rounding error of a sum of len products is bounded by
+				// len * ulp-scale of the sum of absolute values
+				double magnitude = 0.25;
+				for (int i = 0; i < len; i++) {
+					magnitude += Math.abs(a[1 + i] * b[2 + i]);
+				}
+				double tolerance = (len + 1) * Math.ulp(1.0) * magnitude;
+
+				assertEquals(expected, Kernels.dot(-0.25, a, 1, b, 2, len), tolerance, "length " + len);
+			}
+		} finally {
+			Kernels.setUnrolled(mode);
+		}
+	}
+
+	@Test
+	public void axpyEqualsScalarLoopInBothModes() {
+		boolean mode = Kernels.isUnrolled();
+		try {
+			Random rnd = new Random(3);
+			for (boolean unrolled : new boolean[] { false, true }) {
+				Kernels.setUnrolled(unrolled);
+				for (int len : LENGTHS) {
+					double[] x = _random(rnd, len + 2);
+					double[] y = _random(rnd, len + 4);
+					double[] expected = y.clone();
+					for (int i = 0; i < len; i++) {
+						expected[4 + i] += 1.5 * x[2 + i];
+					}
+
+					Kernels.axpy(1.5, x, 2, y, 4, len);
+					assertArrayEquals(expected, y, 0.0, "length " + len);
+				}
+			}
+		} finally {
+			Kernels.setUnrolled(mode);
+		}
+	}
+
+	private static double _dot(double sum, double[] a, int aOffset, double[] b, int bOffset, int len) {
+		for (int i = 0; i < len; i++) {
+			sum += a[aOffset + i] * b[bOffset + i];
+		}
+		return sum;
+	}
+
+	private static double[] _random(Random rnd, int size) {
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = 2.0 * rnd.nextDouble() - 1.0;
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,63 @@
+package neuralnetwork.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Invalidation of NNetCache after changes of weights of the network.
+ */
+public class NNetCacheTest {
+
+	private static final double[] INPUT = { 0.3, -0.2, 0.7 };
+
+	@Test
+	public void neuronSetWeightInvalidatesCache() {
+		NNetFF net = _network();
+		NNetCache cache = new NNetCache(net, 1 << 20);
+		cache.process(INPUT, 0, new double[1], 0);
+
+		net.Lrs[1].getNeuron(0).setWeight(0, 5.0);
+		assertEquals(_direct(net), _cached(cache), 0.0);
+	}
+
+	@Test
+	public void neuronSetWeightsInvalidatesCache() {
+		NNetFF net = _network();
+		NNetCache cache = new NNetCache(net, 1 << 20);
+		cache.process(INPUT, 0, new double[1], 0);
+
+		net.Lrs[0].getNeuron(1).setWeights(new double[] { 1.0, 2.0, 3.0, 4.0 });
+		assertEquals(_direct(net), _cached(cache), 0.0);
+	}
+
+	@Test
+	public void layerMarkModifiedInvalidatesCache() {
+		NNetFF net = _network();
+		NNetCache cache = new NNetCache(net, 1 << 20);
+		cache.process(INPUT, 0, new double[1], 0);
+
+		net.Lrs[1].weights[0] = -5.0;
+		net.Lrs[1].markModified();
+		assertEquals(_direct(net), _cached(cache), 0.0);
+	}
+
+	private static NNetFF _network() {
+		NNetFF net = new NNetFF(3, 4, 1);
+		net.initializeWeights(-1.0, 1.0, 5);
+		return net;
+	}
+
+	private static double _direct(NNetFF net) {
+		double[] result = new double[1];
+		net.process(INPUT, 0, result, 0);
+		return result[0];
+	}
+
+	private static double _cached(NNetCache cache) {
+		double[] result = new double[1];
+		cache.process(INPUT, 0, result, 0);
+		return result[0];
+	}
+
+}
@@ -0,0 +1,85 @@
+package neuralnetwork.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import neuralnetwork.actfun.AFLin;
+
+/**
+ * processBatch() compared with process() called for every row. Sizes are
+ * chosen to cover remainders of the 4 x 2 tiles and of the blocks of
+ * Layer.evaluateBatch() (BLOCK_INPUTS = 128, BLOCK_ROWS = 16) and
+ * NNetFF.processBatch() (BATCH_ROWS = 64).
+ */
+public class NNetFFBatchTest {
+
+	@Test
+	public void oddSizesGiveIdenticalResults() {
+		_compare(67, 5, 7, 3);
+		_compare(3, 1, 1);
+		_compare(1, 2, 2);
+	}
+
+	@Test
+	public void blocksLargerThanTilesGiveIdenticalResults() {
+		// 300 inputs - two full blocks of 128 and a remainder
+		_compare(131, 300, 9, 5, 2);
+		// exact multiples of tiles and blocks
+		_compare(128, 256, 16, 4);
+	}
+
+	@Test
+	public void singleLayerGivesIdenticalResults() {
+		_compare(21, 129, 3);
+	}
+
+	@Test
+	public void linearOutputAndOffsetsGiveIdenticalResults() {
+		NNetFF net = _network(11, 33, 6, 5);
+		net.setOutActFun(new AFLin());
+		_compare(net, 37, 3, 7);
+	}
+
+	private static void _compare(int rows, int inputs, int... neurons) {
+		_compare(_network(rows, inputs, neurons), rows, 0, 0);
+	}
+
+	private static NNetFF _network(int seed, int inputs, int... neurons) {
+		NNetFF net = new NNetFF(inputs, neurons);
+		net.initializeWeights(-1.0, 1.0, seed);
+		return net;
+	}
+
+	private static void _compare(NNetFF net, int rows, int inOffset, int outOffset) {
+		boolean mode = Kernels.isUnrolled();
+		try {
+			// identical results are guaranteed only for the default kernels
+			Kernels.setUnrolled(false);
+
+			int inSize = net.inputSize;
+			int outSize = net.Lrs[net.lCount - 1].nCount;
+			Random rnd = new Random(rows);
+
+			double[] input = new double[inOffset + rows * inSize];
+			for (int i = inOffset; i < input.length; i++) {
+				input[i] = 2.0 * rnd.nextDouble() - 1.0;
+			}
+
+			double[] expected = new double[outOffset + rows * outSize];
+			for (int r = 0; r < rows; r++) {
+				net.process(input, inOffset + r * inSize, expected, outOffset + r * outSize);
+			}
+
+			double[] actual = new double[outOffset + rows * outSize];
+			assertEquals(rows, net.processBatch(input, inOffset, rows, actual, outOffset));
+			assertArrayEquals(expected, actual, 0.0, rows + " rows, " + inSize + " inputs");
+		} finally {
+			Kernels.setUnrolled(mode);
+		}
+	}
+
+}
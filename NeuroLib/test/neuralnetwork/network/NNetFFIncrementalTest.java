@@ -0,0 +1,37 @@
+package neuralnetwork.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * setInputIncremental() compared with full calculation by setInput().
+ */
+public class NNetFFIncrementalTest {
+
+	@Test
+	public void nonFiniteValuesDoNotSpoilLaterResults() {
+		NNetFF net = new NNetFF(8, 5, 2);
+		net.initializeWeights(-1.0, 1.0, 3);
+		NNetFF ref = new NNetFF(net);
+
+		double[] input = { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8 };
+		double[][] changes = { { 2, 0.9 }, { 3, Double.POSITIVE_INFINITY }, { 3, 0.25 }, { 5, Double.NaN },
+				{ 1, Double.NEGATIVE_INFINITY }, { 5, 0.5 }, { 1, 0.0 }, { 6, 0.1 } };
+
+		double[] expected = new double[2];
+		double[] actual = new double[2];
+
+		net.setInputIncremental(input, 0);
+		for (double[] change : changes) {
+			input[(int) change[0]] = change[1];
+			net.setInputIncremental(input, 0);
+			ref.setInput(input, 0);
+			ref.getResult(expected, 0);
+			net.getResult(actual, 0);
+			assertArrayEquals(expected, actual, 1e-12, "after setting input " + (int) change[0]
+					+ " to " + change[1]);
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package neuralnetwork.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Validation of sizes by setStructure() and NNetFF(int, int...).
+ */
+public class NNetFFStructureTest {
+
+	@Test
+	public void validStructureIsCreated() {
+		NNetFF net = new NNetFF(3, 4, 2);
+
+		assertEquals(2, net.lCount);
+		assertEquals(3, net.inputSize);
+		assertEquals(4, net.Lrs[0].nCount);
+		assertEquals(4, net.Lrs[0].wCount);
+		assertEquals(2, net.Lrs[1].nCount);
+		assertEquals(5, net.Lrs[1].wCount);
+	}
+
+	@Test
+	public void constructorRejectsInvalidSizes() {
+		assertThrows(IllegalArgumentException.class, () -> new NNetFF(3));
+		assertThrows(IllegalArgumentException.class, () -> new NNetFF(3, (int[]) null));
+		assertThrows(IllegalArgumentException.class, () -> new NNetFF(0, 2));
+		assertThrows(IllegalArgumentException.class, () -> new NNetFF(3, 4, 0));
+		assertThrows(IllegalArgumentException.class, () -> new NNetFF(3, -1, 2));
+	}
+
+	@Test
+	public void setStructureDoesNotChangeNetworkOnInvalidSizes() {
+		NNetFF net = new NNetFF(3, 4, 2);
+		int version = net.getModificationCount();
+
+		assertFalse(net.setStructure(3, new int[0]));
+		assertFalse(net.setStructure(3, null));
+		assertFalse(net.setStructure(-3, new int[] { 2 }));
+		assertFalse(net.setStructure(3, new int[] { 2, 0 }));
+
+		assertEquals(2, net.lCount);
+		assertEquals(version, net.getModificationCount());
+		assertTrue(net.setStructure(5, new int[] { 1 }));
+		assertEquals(1, net.lCount);
+	}
+
+}
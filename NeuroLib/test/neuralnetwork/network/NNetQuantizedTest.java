@@ -0,0 +1,45 @@
+package neuralnetwork.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+import neuralnetwork.data.DataPackage;
+import neuralnetwork.data.DataVector;
+
+/**
+ * Creating NNetQuantized does not change the state of the source network.
+ */
+public class NNetQuantizedTest {
+
+	@Test
+	public void calibrationDoesNotChangeSourceNetwork() {
+		NNetFF net = new NNetFF(4, 6, 2);
+		net.initializeWeights(-1.0, 1.0, 5);
+		NNetFF ref = new NNetFF(net);
+
+		double[] input = { 0.1, 0.2, 0.3, 0.4 };
+		net.setInputIncremental(input, 0);
+
+		DataPackage calibration = new DataPackage();
+		calibration.add(new DataVector(new double[] { 1.0, -1.0, 0.5, 0.0 }));
+		calibration.add(new DataVector(new double[] { -0.5, 0.8, 0.9, 1.0 }));
+		new NNetQuantized(net, calibration, true);
+
+		// outputs of the last input are kept and incremental update continues from them
+		double[] expected = new double[2];
+		double[] actual = new double[2];
+		ref.setInput(input, 0);
+		ref.getResult(expected, 0);
+		net.getResult(actual, 0);
+		assertArrayEquals(expected, actual, 0.0);
+
+		input[2] = 0.7;
+		net.setInputIncremental(input, 0);
+		ref.setInput(input, 0);
+		ref.getResult(expected, 0);
+		net.getResult(actual, 0);
+		assertArrayEquals(expected, actual, 1e-12);
+	}
+
+}